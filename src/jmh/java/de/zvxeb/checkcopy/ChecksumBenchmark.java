@@ -0,0 +1,56 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.hash.Hasher;
+import de.zvxeb.checkcopy.hash.Hashers;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// createChecksum for one file with different algorithms, buffer and file sizes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChecksumBenchmark {
+    @Param({"MD5", "SHA-256", "CRC32C", "XXH64"})
+    public String algorithm;
+
+    @Param({"8", "64", "1024"})
+    public int bufferSizeKiB;
+
+    @Param({"4096", "1048576", "67108864"})
+    public int fileSize;
+
+    private File file;
+    private Hasher hasher;
+    private ChecksumReader reader;
+
+    private final CancellationCheck never = () -> false;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, NoSuchAlgorithmException {
+        Path p = Files.createTempFile("checkcopy-jmh", ".dat");
+        byte [] data = new byte [fileSize];
+        new Random(42).nextBytes(data);
+        Files.write(p, data);
+        file = p.toFile();
+        hasher = Hashers.forName(algorithm);
+        // no mapping, so the buffer size is what gets measured
+        reader = new ChecksumReader(bufferSizeKiB * 1024, 0L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public byte [] createChecksum() {
+        return CheckCopy.createChecksum(never, reader, hasher, file);
+    }
+}
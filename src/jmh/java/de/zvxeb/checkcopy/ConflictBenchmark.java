@@ -0,0 +1,39 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.conflict.Conflict;
+import de.zvxeb.checkcopy.conflict.ContentConflict;
+import de.zvxeb.checkcopy.conflict.SizeConflict;
+import de.zvxeb.checkcopy.conflict.TypeConflict;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// conflicts format their message when they are created
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConflictBenchmark {
+    private final String sourceChecksum = "5d41402abc4b2a76b9719d911017c592";
+    private final String destinationChecksum = "10c883d450b364eb9e4b12d0a3a8acd7";
+
+    @Benchmark
+    public Conflict checksumConflict() {
+        return ChecksumConflict.causedBy(sourceChecksum, destinationChecksum);
+    }
+
+    @Benchmark
+    public Conflict sizeConflict() {
+        return SizeConflict.causedBy(4096L, 8192L);
+    }
+
+    @Benchmark
+    public Conflict typeConflict() {
+        return TypeConflict.causedBy(true);
+    }
+
+    @Benchmark
+    public Conflict contentConflict() {
+        return ContentConflict.causedBy(123456L);
+    }
+}
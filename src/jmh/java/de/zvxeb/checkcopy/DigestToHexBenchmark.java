@@ -0,0 +1,28 @@
+package de.zvxeb.checkcopy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DigestToHexBenchmark {
+    // MD5, SHA-256 and SHA-512 digest lengths
+    @Param({"16", "32", "64"})
+    public int length;
+
+    private byte [] digest;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        digest = new byte [length];
+        new Random(42).nextBytes(digest);
+    }
+
+    @Benchmark
+    public String digestToHex() {
+        return CheckCopy.digestToHex(digest);
+    }
+}
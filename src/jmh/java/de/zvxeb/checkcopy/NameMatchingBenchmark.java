@@ -0,0 +1,97 @@
+package de.zvxeb.checkcopy;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// matching the two listings of a directory pair, alone and as part of checkDirectory
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NameMatchingBenchmark {
+    @State(Scope.Benchmark)
+    public static class Listings {
+        @Param({"10", "1000", "100000"})
+        public int entries;
+
+        private List<FileEntry> sourceFiles;
+        private List<FileEntry> destinationFiles;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            sourceFiles = new ArrayList<>(entries);
+            destinationFiles = new ArrayList<>(entries);
+            Path base = Paths.get("base");
+            for(int i = 0; i < entries; i++) {
+                sourceFiles.add(new FileEntry(base.resolve("file-" + i + ".dat"), null));
+                // every tenth name differs, like a partially copied directory
+                destinationFiles.add(new FileEntry(base.resolve((i % 10 == 0 ? "other-" : "file-") + i + ".dat"), null));
+            }
+        }
+    }
+
+    // real directories, only up to a size that sets up in reasonable time
+    @State(Scope.Benchmark)
+    public static class Directories {
+        @Param({"10", "1000", "10000"})
+        public int files;
+
+        private Path root;
+        private Path source;
+        private Path destination;
+        private CheckControl config;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            root = Files.createTempDirectory("checkcopy-jmh");
+            source = Files.createDirectory(root.resolve("s"));
+            destination = Files.createDirectory(root.resolve("d"));
+            for(int i = 0; i < files; i++) {
+                Files.createFile(source.resolve("file-" + i + ".dat"));
+                Files.createFile(destination.resolve((i % 10 == 0 ? "other-" : "file-") + i + ".dat"));
+            }
+            config = new CheckControl().checkSize(true).checksum(false).init();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            try(Stream<Path> s = Files.walk(root)) {
+                s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public int match(Listings l) {
+        Map<String, FileEntry> destinationIndex = CheckCopy.indexByName(l.destinationFiles);
+        Set<String> sourceNames = CheckCopy.names(l.sourceFiles);
+        int matched = 0;
+        for(FileEntry es : l.sourceFiles) {
+            if(destinationIndex.get(es.name()) != null) {
+                matched++;
+            }
+        }
+        for(FileEntry ed : l.destinationFiles) {
+            if(!sourceNames.contains(ed.name())) {
+                matched--;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public void checkDirectory(Directories d, Blackhole bh) throws IOException {
+        List<Path> subdirectories = new ArrayList<>();
+        bh.consume(CheckCopy.checkDirectory(d.config, null, d.source, d.destination, subdirectories));
+    }
+}
@@ -0,0 +1,138 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.hash.Hasher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// keeps up to queueDepth reads of a file in flight while the blocks are hashed in
+// file order; all files share one I/O pool, so queueDepth also bounds the reads
+// outstanding across files - meant for mounts where latency, not bandwidth, limits
+public class AsyncReads {
+    private final int queueDepth;
+    private final ExecutorService pool;
+
+    // every hashing thread owns queueDepth buffers of the reader's buffer size
+    private final ThreadLocal<ByteBuffer []> buffers = new ThreadLocal<>();
+
+    public AsyncReads(int queueDepth) {
+        if(queueDepth <= 0) {
+            throw new IllegalArgumentException("Queue depth must be positive: " + queueDepth);
+        }
+        this.queueDepth = queueDepth;
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(queueDepth, r -> {
+            Thread t = new Thread(r, "checkcopy-read-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int queueDepth() {
+        return queueDepth;
+    }
+
+    public ExecutorService pool() {
+        return pool;
+    }
+
+    private ByteBuffer [] buffers(int blockSize) {
+        ByteBuffer [] ring = buffers.get();
+        if(ring == null || ring[0].capacity() != blockSize) {
+            ring = new ByteBuffer [queueDepth];
+            for(int i = 0; i < ring.length; i++) {
+                ring[i] = ByteBuffer.allocateDirect(blockSize);
+            }
+            buffers.set(ring);
+        }
+        return ring;
+    }
+
+    boolean digest(CancellationCheck cc, IoGovernor.Budget budget, Hasher hasher, AsynchronousFileChannel afc, long size, int blockSize) throws IOException {
+        ByteBuffer [] ring = buffers(blockSize);
+        @SuppressWarnings("unchecked")
+        Future<Integer> [] reads = (Future<Integer> []) new Future<?> [ring.length];
+        long [] positions = new long [ring.length];
+
+        long next = 0;
+        int head = 0;
+        try {
+            for(int i = 0; i < ring.length && next < size; i++, next += blockSize) {
+                reads[i] = read(afc, ring[i], positions[i] = next, size);
+            }
+            while(reads[head] != null) {
+                if(cc.cancelled()) {
+                    return false;
+                }
+                ByteBuffer b = ring[head];
+                int r = await(reads[head]);
+                reads[head] = null;
+                // short reads are completed in place, the following blocks are already queued
+                while(r > 0 && b.hasRemaining()) {
+                    r = await(afc.read(b, positions[head] + b.position()));
+                }
+                b.flip();
+                if(budget != null) {
+                    budget.read(cc, b.limit());
+                }
+                hasher.update(b);
+                if(r < 0 && b.limit() == 0) {
+                    // the file shrank, nothing more to read
+                    break;
+                }
+                if(next < size) {
+                    reads[head] = read(afc, b, positions[head] = next, size);
+                    next += blockSize;
+                }
+                head = (head + 1) % ring.length;
+            }
+            return true;
+        } finally {
+            // the buffers are reused for the next file, so no read may still be writing into one
+            for(Future<Integer> f : reads) {
+                if(f != null) {
+                    try {
+                        f.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        // the first failure is already on its way up
+                    }
+                }
+            }
+        }
+    }
+
+    private static Future<Integer> read(AsynchronousFileChannel afc, ByteBuffer b, long position, long size) {
+        b.clear();
+        if(size - position < b.capacity()) {
+            b.limit((int) (size - position));
+        }
+        return afc.read(b, position);
+    }
+
+    private static int await(Future<Integer> read) throws IOException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "async:" + queueDepth;
+    }
+}
@@ -1,12 +1,17 @@
 package de.zvxeb.checkcopy;
 
 import de.zvxeb.checkcopy.exception.CheckCancelledException;
+import de.zvxeb.checkcopy.hash.Hasher;
+import de.zvxeb.checkcopy.hash.Hashers;
+import de.zvxeb.checkcopy.hash.MessageDigestHasher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public class CheckControl implements CancellationCheck, AutoCloseable {
     private static Logger log = LoggerFactory.getLogger(CheckControl.class);
@@ -15,14 +20,36 @@ public class CheckControl implements CancellationCheck, AutoCloseable {
     private boolean failFast = false;
     private boolean failOnDestination = false;
     private boolean checksum = false;
-    private MessageDigest messageDigestS;
-    private MessageDigest messageDigestD;
+    private Hasher hasherS;
+    private Hasher hasherD;
+
+    // traversal workers hash concurrently and need their own hasher instances
+    private ThreadLocal<Hasher> workerHasherS;
+    private ThreadLocal<Hasher> workerHasherD;
 
     private ExecutorService executor;
+    private ForkJoinPool traversalPool;
+    private ChecksumReader checksumReader = new ChecksumReader();
+    private ChecksumCache checksumCache;
+    private Journal journal;
+    private ResultSink resultSink;
+    private SampleLayout sampleLayout;
+    private TreeHash treeHash;
+    private AsyncReads asyncReads;
+    private IoScheduler ioScheduler;
+    private boolean physicalOrder = false;
+    private int orderWindow = 0;
+    private volatile IoGovernor ioGovernor;
+    private boolean compareContent = false;
+    private ContentComparator contentComparator;
+    private int pipelineDepth = 0;
+    private ChecksumPipeline checksumPipeline;
 
-    private boolean cancelled;
+    private volatile boolean cancelled;
 
     private CheckEventListener eventListener;
+    private CheckEventListener timedEventListener;
+    private CheckMetrics metrics;
 
     public CheckControl() {
     }
@@ -61,40 +88,63 @@ public class CheckControl implements CancellationCheck, AutoCloseable {
     public CheckControl checksum(boolean checksum) {
         this.checksum = checksum;
         try {
-            this.messageDigestS = MessageDigest.getInstance("MD5");
-            this.messageDigestD = MessageDigest.getInstance("MD5");
+            this.hasherS = Hashers.forName("MD5");
+            this.hasherD = hasherS.copy();
         } catch (NoSuchAlgorithmException e) {
             log.error("No MD5 Digest available!", e);
             this.checksum = false;
-            this.messageDigestS = null;
-            this.messageDigestD = null;
+            this.hasherS = null;
+            this.hasherD = null;
         }
         return this;
     }
 
     public CheckControl checksum(MessageDigest md) {
-        this.checksum = md != null;
-        this.messageDigestS = md;
-        this.messageDigestD = null;
-        // need to clone for parallel digestion
-        if(md != null) {
+        return checksum(Hashers.wrap(md));
+    }
+
+    public CheckControl checksum(Hasher hasher) {
+        this.checksum = hasher != null;
+        this.hasherS = hasher;
+        this.hasherD = null;
+        // need a second instance for parallel digestion
+        if(hasher != null) {
             try {
-                this.messageDigestD = MessageDigest.getInstance(md.getAlgorithm());
-            } catch (NoSuchAlgorithmException e) {
-                log.error("Unable to create new instance of " + md.getAlgorithm(), e);
+                this.hasherD = hasher.copy();
+            } catch (IllegalStateException e) {
+                log.error("Unable to create new instance of " + hasher.algorithm(), e);
                 this.checksum = false;
-                this.messageDigestS = null;
+                this.hasherS = null;
             }
         }
         return this;
     }
 
+    public Hasher hasherS() {
+        return workerHasherS != null ? workerHasherS.get() : hasherS;
+    }
+
+    public Hasher hasherD() {
+        return workerHasherD != null ? workerHasherD.get() : hasherD;
+    }
+
+    // kept for callers from before the hashers; null unless the hasher wraps a MessageDigest
+    @Deprecated
     public MessageDigest messageDigestS() {
-        return messageDigestS;
+        return messageDigest(hasherS());
     }
 
+    @Deprecated
     public MessageDigest messageDigestD() {
-        return messageDigestD;
+        return messageDigest(hasherD());
+    }
+
+    private static MessageDigest messageDigest(Hasher hasher) {
+        return hasher instanceof MessageDigestHasher ? ((MessageDigestHasher) hasher).messageDigest() : null;
+    }
+
+    public String checksumAlgorithm() {
+        return hasherS != null ? hasherS.algorithm() : null;
     }
 
     public CheckControl messageDigest(MessageDigest messageDigest) {
@@ -110,6 +160,176 @@ public class CheckControl implements CancellationCheck, AutoCloseable {
         return this;
     }
 
+    public ForkJoinPool traversalPool() {
+        return traversalPool;
+    }
+
+    public CheckControl traversalPool(ForkJoinPool traversalPool) {
+        this.traversalPool = traversalPool;
+        return this;
+    }
+
+    public ChecksumReader checksumReader() {
+        return checksumReader;
+    }
+
+    public CheckControl checksumReader(ChecksumReader checksumReader) {
+        this.checksumReader = checksumReader != null ? checksumReader : new ChecksumReader();
+        return this;
+    }
+
+    public boolean compareContent() {
+        return compareContent;
+    }
+
+    public CheckControl compareContent(boolean compareContent) {
+        this.compareContent = compareContent;
+        return this;
+    }
+
+    public ContentComparator contentComparator() {
+        return contentComparator;
+    }
+
+    public SampleLayout sampleLayout() {
+        return sampleLayout;
+    }
+
+    public CheckControl sampleLayout(SampleLayout sampleLayout) {
+        this.sampleLayout = sampleLayout;
+        return this;
+    }
+
+    public TreeHash treeHash() {
+        return treeHash;
+    }
+
+    public CheckControl treeHash(TreeHash treeHash) {
+        this.treeHash = treeHash;
+        return this;
+    }
+
+    public AsyncReads asyncReads() {
+        return asyncReads;
+    }
+
+    public CheckControl asyncReads(AsyncReads asyncReads) {
+        this.asyncReads = asyncReads;
+        return this;
+    }
+
+    public IoScheduler ioScheduler() {
+        return ioScheduler;
+    }
+
+    // per device read limits, the trees are registered when a check starts
+    public CheckControl ioScheduler(IoScheduler ioScheduler) {
+        this.ioScheduler = ioScheduler;
+        return this;
+    }
+
+    public boolean physicalOrder() {
+        return physicalOrder;
+    }
+
+    // read the files of a directory in inode order
+    public CheckControl physicalOrder(boolean physicalOrder) {
+        this.physicalOrder = physicalOrder;
+        return this;
+    }
+
+    public int orderWindow() {
+        return orderWindow;
+    }
+
+    // pairs the checksum pipeline sorts across directories before starting them
+    public CheckControl orderWindow(int orderWindow) {
+        this.orderWindow = orderWindow;
+        return this;
+    }
+
+    public IoGovernor ioGovernor() {
+        return ioGovernor;
+    }
+
+    public CheckControl ioGovernor(IoGovernor ioGovernor) {
+        this.ioGovernor = ioGovernor;
+        return this;
+    }
+
+    public IoGovernor.Budget ioBudget(boolean source) {
+        IoGovernor g = ioGovernor;
+        return g != null ? g.budget(source) : null;
+    }
+
+    // bytes and operations per second for one side, 0 = unlimited; also while a check runs
+    public synchronized CheckControl readLimit(boolean source, long bytesPerSecond, long opsPerSecond) {
+        if(ioGovernor == null) {
+            if(bytesPerSecond <= 0 && opsPerSecond <= 0) {
+                return this;
+            }
+            ioGovernor = new IoGovernor();
+        }
+        ioGovernor.bytesPerSecond(source, bytesPerSecond).opsPerSecond(source, opsPerSecond);
+        return this;
+    }
+
+    public VerificationTier verificationTier() {
+        if(compareContent) {
+            return VerificationTier.CONTENT;
+        }
+        if(checksum) {
+            return sampleLayout != null ? VerificationTier.SAMPLED : VerificationTier.CHECKSUM;
+        }
+        return checkSize ? VerificationTier.SIZE : VerificationTier.EXISTENCE;
+    }
+
+    // files too small to be sampled are hashed whole
+    public VerificationTier checksumTier(long size) {
+        return sampleLayout != null && sampleLayout.sampled(size) ? VerificationTier.SAMPLED : VerificationTier.CHECKSUM;
+    }
+
+    public int pipelineDepth() {
+        return pipelineDepth;
+    }
+
+    public CheckControl pipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+        return this;
+    }
+
+    ChecksumPipeline checksumPipeline() {
+        return checksumPipeline;
+    }
+
+    public ChecksumCache checksumCache() {
+        return checksumCache;
+    }
+
+    public CheckControl checksumCache(ChecksumCache checksumCache) {
+        this.checksumCache = checksumCache;
+        return this;
+    }
+
+    public Journal journal() {
+        return journal;
+    }
+
+    public CheckControl journal(Journal journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    public ResultSink resultSink() {
+        return resultSink;
+    }
+
+    // directories with problems are pushed here as they finish instead of being collected
+    public CheckControl resultSink(ResultSink resultSink) {
+        this.resultSink = resultSink;
+        return this;
+    }
+
     @Override
     public boolean cancelled() {
         return cancelled;
@@ -127,16 +347,68 @@ public class CheckControl implements CancellationCheck, AutoCloseable {
 
     public CheckControl init() {
         this.cancelled = false;
-        if(this.messageDigestS==null) {
+        if(this.hasherS==null) {
             this.checksum = false;
         }
-        if(this.messageDigestD == null) {
+        if(this.hasherD == null) {
             this.checksum = false;
         }
         if(executor!=null && executor.isShutdown()) {
             log.warn("Executor is shut-down - multi-threading disabled!");
             executor = null;
         }
+        if(traversalPool!=null && traversalPool.isShutdown()) {
+            log.warn("Traversal pool is shut-down - parallel traversal disabled!");
+            traversalPool = null;
+        }
+        if(checksumReader.sampleLayout() != sampleLayout) {
+            checksumReader = checksumReader.sampleLayout(sampleLayout);
+        }
+        if(treeHash != null && treeHash.pool().isShutdown()) {
+            log.warn("Tree hash pool is shut-down - tree hashing disabled!");
+            treeHash = null;
+        }
+        if(checksumReader.treeHash() != treeHash) {
+            checksumReader = checksumReader.treeHash(treeHash);
+        }
+        if(asyncReads != null && asyncReads.pool().isShutdown()) {
+            log.warn("Asynchronous read pool is shut-down - asynchronous reads disabled!");
+            asyncReads = null;
+        }
+        if(checksumReader.asyncReads() != asyncReads) {
+            checksumReader = checksumReader.asyncReads(asyncReads);
+        }
+        if(compareContent) {
+            if(contentComparator == null || contentComparator.bufferSize() < checksumReader.bufferSize()) {
+                contentComparator = new ContentComparator(checksumReader.bufferSize());
+            }
+        } else {
+            contentComparator = null;
+        }
+        checksumPipeline = null;
+        if(pipelineDepth > 0 && checksum) {
+            if(executor != null) {
+                checksumPipeline = new ChecksumPipeline(this, pipelineDepth, physicalOrder ? orderWindow : 0, hasherS);
+            } else {
+                log.warn("No executor - checksum pipeline disabled!");
+            }
+        }
+        if(traversalPool!=null && checksum) {
+            workerHasherS = ThreadLocal.withInitial(hasherS::copy);
+            workerHasherD = ThreadLocal.withInitial(hasherD::copy);
+        } else {
+            workerHasherS = null;
+            workerHasherD = null;
+        }
+        if(journal!=null) {
+            journal.mode(Journal.mode(this));
+        }
+        if(metrics!=null) {
+            timedEventListener = eventListener != null ? new TimedEventListener(eventListener, metrics) : null;
+            metrics.register();
+        } else {
+            timedEventListener = null;
+        }
         return this;
     }
 
@@ -147,11 +419,22 @@ public class CheckControl implements CancellationCheck, AutoCloseable {
     }
 
     public CheckEventListener eventListener() {
-        return eventListener;
+        return timedEventListener != null ? timedEventListener : eventListener;
     }
 
     public CheckControl eventListener(CheckEventListener eventListener) {
         this.eventListener = eventListener;
+        this.timedEventListener = null;
+        return this;
+    }
+
+    public CheckMetrics metrics() {
+        return metrics;
+    }
+
+    // phase timings, published as an MBean while the run is active
+    public CheckControl metrics(CheckMetrics metrics) {
+        this.metrics = metrics;
         return this;
     }
 
@@ -159,6 +442,32 @@ public class CheckControl implements CancellationCheck, AutoCloseable {
         if(executor!=null) {
             executor.shutdown();
         }
+        if(traversalPool!=null) {
+            traversalPool.shutdown();
+        }
+        if(treeHash!=null) {
+            treeHash.pool().shutdown();
+        }
+        if(asyncReads!=null) {
+            asyncReads.pool().shutdown();
+        }
+        if(checksumCache!=null) {
+            try {
+                checksumCache.save();
+            } catch (IOException e) {
+                log.error("Unable to save checksum cache " + checksumCache.file(), e);
+            }
+        }
+        if(metrics!=null) {
+            metrics.unregister();
+        }
+        if(journal!=null) {
+            try {
+                journal.save(!cancelled);
+            } catch (IOException e) {
+                log.error("Unable to save journal " + journal.file(), e);
+            }
+        }
     }
 
     @Override
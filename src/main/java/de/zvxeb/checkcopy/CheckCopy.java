@@ -4,19 +4,22 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.conflict.ContentConflict;
 import de.zvxeb.checkcopy.conflict.SizeConflict;
 import de.zvxeb.checkcopy.conflict.TypeConflict;
 import de.zvxeb.checkcopy.exception.ChecksumException;
 import de.zvxeb.checkcopy.exception.DirectoryReadException;
 import de.zvxeb.checkcopy.exception.NotADirectoryException;
 import de.zvxeb.checkcopy.gui.CheckCopyGUI;
+import de.zvxeb.checkcopy.hash.Hasher;
+import de.zvxeb.checkcopy.hash.Hashers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
@@ -26,6 +29,7 @@ import java.time.Instant;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
 @Parameters(resourceBundle = "messages")
@@ -35,6 +39,10 @@ public class CheckCopy {
     public static final String MD5 = "MD5";
     public static final String NULL = "null";
 
+    public static final String FORMAT_TEXT = "text";
+    public static final String FORMAT_JSONL = "jsonl";
+    public static final String FORMAT_CSV = "csv";
+
     @Parameter(order = 0, help = true, names = {"--help", "-h"}, descriptionKey = "cli_help")
     private boolean help = false;
 
@@ -56,7 +64,97 @@ public class CheckCopy {
     @Parameter(order = 6, names = {"--start-gui", "-g"}, descriptionKey = "cli_gui")
     public boolean startGui = false;
 
-    @Parameter(order = 7, descriptionKey = "cli_paths")
+    @Parameter(order = 7, names = {"--traversal-threads", "-t"}, descriptionKey = "cli_traversal_threads")
+    public int traversalThreads = 0;
+
+    @Parameter(order = 8, names = {"--buffer-size", "-b"}, descriptionKey = "cli_buffer_size")
+    public int bufferSizeKiB = ChecksumReader.DEFAULT_BUFFER_SIZE / 1024;
+
+    @Parameter(order = 9, names = {"--map-threshold", "-m"}, descriptionKey = "cli_map_threshold")
+    public long mapThresholdMiB = ChecksumReader.DEFAULT_MAP_THRESHOLD / (1024 * 1024);
+
+    @Parameter(order = 10, names = {"--cache"}, descriptionKey = "cli_cache")
+    public String checksumCacheFile;
+
+    @Parameter(order = 11, names = {"--cache-entries"}, descriptionKey = "cli_cache_entries")
+    public int checksumCacheEntries = ChecksumCache.DEFAULT_MAX_ENTRIES;
+
+    @Parameter(order = 12, names = {"--compare", "-x"}, descriptionKey = "cli_compare")
+    public boolean compareContent = false;
+
+    @Parameter(order = 13, names = {"--pipeline"}, descriptionKey = "cli_pipeline")
+    public int pipelineDepth = 0;
+
+    @Parameter(order = 14, names = {"--sample"}, descriptionKey = "cli_sample")
+    public int sampleBlocks = 0;
+
+    @Parameter(order = 15, names = {"--sample-block-size"}, descriptionKey = "cli_sample_block_size")
+    public int sampleBlockSizeKiB = SampleLayout.DEFAULT_BLOCK_SIZE / 1024;
+
+    @Parameter(order = 16, names = {"--tree-chunk"}, descriptionKey = "cli_tree_chunk")
+    public int treeChunkMiB = 0;
+
+    @Parameter(order = 17, names = {"--tree-threads"}, descriptionKey = "cli_tree_threads")
+    public int treeThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(order = 18, names = {"--manifest"}, descriptionKey = "cli_manifest")
+    public String manifestFile;
+
+    @Parameter(order = 19, names = {"--write-manifest"}, descriptionKey = "cli_write_manifest")
+    public boolean writeManifest = false;
+
+    @Parameter(order = 20, names = {"--verify-manifest"}, descriptionKey = "cli_verify_manifest")
+    public boolean verifyManifest = false;
+
+    @Parameter(order = 21, names = {"--import-sums"}, descriptionKey = "cli_import_sums")
+    public String importSums;
+
+    @Parameter(order = 22, names = {"--export-sums"}, descriptionKey = "cli_export_sums")
+    public String exportSums;
+
+    @Parameter(order = 23, names = {"--journal"}, descriptionKey = "cli_journal")
+    public String journalFile;
+
+    @Parameter(order = 24, names = {"--format"}, descriptionKey = "cli_format")
+    public String outputFormat = FORMAT_TEXT;
+
+    @Parameter(order = 25, names = {"--output", "-o"}, descriptionKey = "cli_output")
+    public String outputFile;
+
+    @Parameter(order = 26, names = {"--metrics"}, descriptionKey = "cli_metrics")
+    public boolean metrics = false;
+
+    @Parameter(order = 27, names = {"--async-reads"}, descriptionKey = "cli_async_reads")
+    public int asyncReadDepth = 0;
+
+    @Parameter(order = 28, names = {"--io-scheduler"}, descriptionKey = "cli_io_scheduler")
+    public boolean ioScheduler = false;
+
+    @Parameter(order = 29, names = {"--io-device"}, descriptionKey = "cli_io_device")
+    public List<String> ioDevices;
+
+    @Parameter(order = 30, names = {"--physical-order"}, descriptionKey = "cli_physical_order")
+    public boolean physicalOrder = false;
+
+    @Parameter(order = 31, names = {"--order-window"}, descriptionKey = "cli_order_window")
+    public int orderWindow = 0;
+
+    @Parameter(order = 32, names = {"--source-limit"}, descriptionKey = "cli_source_limit")
+    public int sourceLimitMiB = 0;
+
+    @Parameter(order = 33, names = {"--destination-limit"}, descriptionKey = "cli_destination_limit")
+    public int destinationLimitMiB = 0;
+
+    @Parameter(order = 34, names = {"--source-iops"}, descriptionKey = "cli_source_iops")
+    public int sourceIops = 0;
+
+    @Parameter(order = 35, names = {"--destination-iops"}, descriptionKey = "cli_destination_iops")
+    public int destinationIops = 0;
+
+    @Parameter(order = 36, names = {"--progress"}, descriptionKey = "cli_progress")
+    public boolean progress = false;
+
+    @Parameter(order = 37, descriptionKey = "cli_paths")
     public List<String> sourceAndDestination;
 
     public static void main(String...args) throws IOException {
@@ -84,19 +182,52 @@ public class CheckCopy {
             return;
         }
 
+        if(cc.importSums != null || cc.exportSums != null) {
+            convertSums(cc, messages);
+            return;
+        }
+
+        boolean manifestMode = cc.writeManifest || cc.verifyManifest;
+        if(manifestMode && (cc.manifestFile == null || (cc.writeManifest && cc.verifyManifest))) {
+            System.err.println(messages.getString("cli_error_manifest"));
+            return;
+        }
+
         int files = cc.sourceAndDestination != null ? cc.sourceAndDestination.size() : 0;
 
-        if(files != 2) {
+        if(manifestMode ? files != 1 : files < 2) {
             if(args.length==0) {
                 jc.usage();
             } else {
-                System.err.println(messages.getString("cli_error_no_paths"));
+                System.err.println(messages.getString(manifestMode ? "cli_error_manifest_path" : "cli_error_no_paths"));
             }
             return;
         }
 
+        if(!FORMAT_TEXT.equals(cc.outputFormat) && !FORMAT_JSONL.equals(cc.outputFormat) && !FORMAT_CSV.equals(cc.outputFormat)) {
+            System.err.println(String.format(messages.getString("cli_error_format"), cc.outputFormat));
+            return;
+        }
+        // keep machine readable output on stdout clean
+        PrintStream info = cc.outputFile == null && !FORMAT_TEXT.equals(cc.outputFormat) ? System.err : System.out;
+
+        Manifest manifest = null;
+        if(cc.verifyManifest) {
+            try {
+                manifest = Manifest.open(Paths.get(cc.manifestFile));
+            } catch (IOException e) {
+                System.err.println(String.format(messages.getString("error_manifest_load"), cc.manifestFile, e.getLocalizedMessage()));
+                return;
+            }
+            // the manifest decides how the destination is hashed
+            if(!cc.noSizeCheck) {
+                cc.checkSumAlgorithm = manifest.algorithm();
+            }
+            info.println(String.format(messages.getString("process_verify_manifest"), cc.manifestFile, manifest.size(), manifest.digestKind()));
+        }
+
         if(cc.noSizeCheck) {
-            System.out.println(messages.getString("process_no_size"));
+            info.println(messages.getString("process_no_size"));
             // check if this is the initial instance
             if(cc.checkSumAlgorithm == MD5) {
                 // disable checksum for disabled size check
@@ -104,13 +235,25 @@ public class CheckCopy {
             }
         }
 
-        MessageDigest md;
+        if(cc.compareContent) {
+            if(cc.noSizeCheck) {
+                System.err.println(messages.getString("cli_error_size_compare"));
+                return;
+            }
+            info.println(messages.getString("process_compare_content"));
+            // byte comparison replaces the checksum
+            cc.checkSumAlgorithm = NULL;
+        }
+
+        Hasher md;
         if(cc.checkSumAlgorithm.equalsIgnoreCase(NULL)) {
-            System.out.println(messages.getString("process_no_checksum"));
+            if(!cc.compareContent) {
+                info.println(messages.getString("process_no_checksum"));
+            }
             md = null;
         } else {
             try {
-                md = MessageDigest.getInstance(cc.checkSumAlgorithm);
+                md = Hashers.forName(cc.checkSumAlgorithm);
             } catch (NoSuchAlgorithmException e) {
                 e.printStackTrace();
                 System.err.println(String.format(messages.getString("error_digest_message"), cc.checkSumAlgorithm));
@@ -125,168 +268,553 @@ public class CheckCopy {
         }
 
         if(cc.noParallelRead) {
-            System.out.println(messages.getString("process_no_parallel_read"));
+            info.println(messages.getString("process_no_parallel_read"));
+        }
+
+        if(!manifestMode && files > 2) {
+            if(cc.traversalThreads > 0 || cc.pipelineDepth > 0) {
+                System.err.println(messages.getString("cli_error_replicas"));
+                return;
+            }
+            // a byte comparison would read the source once per replica
+            if(cc.compareContent) {
+                System.err.println(messages.getString("cli_error_replicas_compare"));
+                return;
+            }
+            info.println(String.format(messages.getString("process_replicas"), files - 1));
+        }
+
+        if(cc.traversalThreads > 0) {
+            info.println(String.format(messages.getString("process_parallel_traversal"), cc.traversalThreads));
+        }
+
+        if(cc.pipelineDepth > 0 && md != null) {
+            if(cc.noParallelRead) {
+                System.err.println(messages.getString("cli_error_pipeline_parallel"));
+                return;
+            }
+            info.println(String.format(messages.getString("process_checksum_pipeline"), cc.pipelineDepth));
+        }
+
+        if(cc.sampleBlocks > 0) {
+            if(md == null) {
+                System.err.println(messages.getString("cli_error_sample_checksum"));
+                return;
+            }
+            if(cc.sampleBlockSizeKiB <= 0) {
+                System.err.println(messages.getString("cli_error_buffer_size"));
+                return;
+            }
+            info.println(String.format(messages.getString("process_sampled"), cc.sampleBlocks, cc.sampleBlockSizeKiB));
+        }
+
+        if(cc.treeChunkMiB > 0 && md != null) {
+            if(cc.treeThreads <= 0) {
+                System.err.println(messages.getString("cli_error_tree_threads"));
+                return;
+            }
+            info.println(String.format(messages.getString("process_tree_hash"), cc.treeChunkMiB, cc.treeThreads));
+        }
+
+        if(cc.bufferSizeKiB <= 0) {
+            System.err.println(messages.getString("cli_error_buffer_size"));
+            return;
+        }
+
+        if(cc.asyncReadDepth < 0) {
+            System.err.println(messages.getString("cli_error_async_reads"));
+            return;
+        }
+        if(cc.asyncReadDepth > 0 && md != null) {
+            info.println(String.format(messages.getString("process_async_reads"), cc.asyncReadDepth));
+        }
+
+        if(cc.orderWindow < 0 || (cc.orderWindow > 0 && (!cc.physicalOrder || cc.pipelineDepth <= 0))) {
+            System.err.println(messages.getString("cli_error_order_window"));
+            return;
+        }
+        if(cc.physicalOrder && (md != null || cc.compareContent)) {
+            info.println(messages.getString("process_physical_order"));
+            if(cc.orderWindow > 0) {
+                info.println(String.format(messages.getString("process_order_window"), cc.orderWindow));
+            }
+        }
+
+        if(cc.sourceLimitMiB < 0 || cc.destinationLimitMiB < 0 || cc.sourceIops < 0 || cc.destinationIops < 0) {
+            System.err.println(messages.getString("cli_error_read_limit"));
+            return;
+        }
+        if(cc.sourceLimitMiB > 0 || cc.sourceIops > 0) {
+            info.println(String.format(messages.getString("process_read_limit_source"), cc.sourceLimitMiB, cc.sourceIops));
+        }
+        if(cc.destinationLimitMiB > 0 || cc.destinationIops > 0) {
+            info.println(String.format(messages.getString("process_read_limit_destination"), cc.destinationLimitMiB, cc.destinationIops));
+        }
+        if(cc.progress) {
+            info.println(messages.getString("process_pre_scan"));
+        }
+
+        IoScheduler scheduler = null;
+        if(cc.ioScheduler || cc.ioDevices != null) {
+            if(cc.ioDevices != null && IoScheduler.parseOverrides(cc.ioDevices) == null) {
+                System.err.println(messages.getString("cli_error_io_device"));
+                return;
+            }
+            scheduler = cc.ioScheduler();
+            for(String p : cc.sourceAndDestination) {
+                scheduler.register(Paths.get(p));
+            }
+            for(IoScheduler.Device d : scheduler.devices()) {
+                info.println(String.format(messages.getString("process_io_device"), d.name(), d.kind(), d.reads()));
+            }
+        }
+        // every device gets as many readers as it can serve
+        int readers = Math.max(Math.max(2, files - 1), scheduler != null ? scheduler.threads() : 0);
+
+        ChecksumCache cache = null;
+        if(cc.checksumCacheFile != null && md != null) {
+            try {
+                cache = ChecksumCache.open(Paths.get(cc.checksumCacheFile), cc.checksumCacheEntries);
+                info.println(String.format(messages.getString("process_checksum_cache"), cache.file(), cache.size()));
+            } catch (IOException e) {
+                System.err.println(String.format(messages.getString("error_cache_load"), cc.checksumCacheFile, e.getLocalizedMessage()));
+                return;
+            }
+        }
+
+        Journal journal = null;
+        if(cc.journalFile != null && !manifestMode) {
+            try {
+                journal = Journal.open(Paths.get(cc.journalFile));
+                info.println(String.format(messages.getString("process_journal"), journal.file(), journal.size()));
+            } catch (IOException e) {
+                System.err.println(String.format(messages.getString("error_journal_load"), cc.journalFile, e.getLocalizedMessage()));
+                return;
+            }
+        }
+
+        ResultWriter results;
+        try {
+            results = cc.resultWriter(messages);
+        } catch (IOException e) {
+            System.err.println(String.format(messages.getString("error_output"), cc.outputFile, e.getLocalizedMessage()));
+            return;
         }
 
         final CheckControl config =
             new CheckControl().
                 checkSize(!cc.noSizeCheck).
                 checksum(md).
-                executor(cc.noParallelRead ? null : Executors.newFixedThreadPool(2))
+                compareContent(cc.compareContent).
+                executor(cc.noParallelRead ? null : Executors.newFixedThreadPool(readers)).
+                ioScheduler(scheduler).
+                physicalOrder(cc.physicalOrder).
+                orderWindow(cc.orderWindow).
+                readLimit(true, cc.sourceLimitMiB * 1024L * 1024L, cc.sourceIops).
+                readLimit(false, cc.destinationLimitMiB * 1024L * 1024L, cc.destinationIops).
+                traversalPool(cc.traversalThreads > 0 ? new ForkJoinPool(cc.traversalThreads) : null).
+                checksumReader(cc.checksumReader()).
+                checksumCache(cache).
+                journal(journal).
+                resultSink(results).
+                metrics(cc.metrics ? new CheckMetrics() : null).
+                pipelineDepth(cc.pipelineDepth).
+                sampleLayout(cc.sampleLayout()).
+                treeHash(md != null ? cc.treeHash() : null).
+                asyncReads(md != null ? cc.asyncReads() : null)
                 ;
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             log.debug("Shutting down");
             config.cancel();
         }));
         CheckMeta meta = new CheckMeta();
+        if(config.metrics() != null) {
+            config.metrics().meta(meta);
+        }
         Path source = Paths.get(cc.sourceAndDestination.get(0));
-        Path destination = Paths.get(cc.sourceAndDestination.get(1));
+        List<Path> destinations = new ArrayList<>();
+        if(!manifestMode) {
+            for(String d : cc.sourceAndDestination.subList(1, files)) {
+                destinations.add(Paths.get(d));
+            }
+        }
         Instant start = Instant.now();
-        List<CheckResult> crl = checkCopy(config.init(), meta, source, destination);
+        config.init();
+        PreScan scan = null;
+        ProgressLine progressLine = null;
+        if(cc.progress) {
+            // a verified manifest stands in for the source, the tree on disk is its destination
+            scan = cc.verifyManifest ? PreScan.start(config, null, source) : PreScan.start(config, source, destinations);
+            progressLine = ProgressLine.start(new Progress(meta, scan), messages, System.err);
+            // results on the terminal must not end up behind the progress line
+            if(cc.outputFile == null) {
+                config.resultSink(progressLine.around(results));
+            }
+        }
+        int manifestEntries = -1;
+        if(cc.writeManifest) {
+            manifestEntries = Manifest.create(config, meta, source, Paths.get(cc.manifestFile));
+        } else if(manifest != null) {
+            if(config.checksum() && !manifest.digestKind().equals(config.checksumReader().cacheKey(config.checksumAlgorithm()))) {
+                if(scan != null) {
+                    scan.stop();
+                    progressLine.stop();
+                }
+                config.release();
+                results.close();
+                System.err.println(String.format(messages.getString("cli_error_manifest_kind"), manifest.digestKind(), config.checksumReader().cacheKey(config.checksumAlgorithm())));
+                return;
+            }
+            manifest.verify(config, meta, source);
+        } else {
+            checkCopy(config, meta, source, destinations);
+        }
         Instant end = Instant.now();
         Duration checkDuration = Duration.between(start, end);
+        if(scan != null) {
+            scan.stop();
+            progressLine.stop();
+        }
         config.release();
-        System.out.println(String.format(messages.getString("status_progress_final"), meta.numberOfFiles(), meta.numberOfDirectories(), formatTime(checkDuration)));
-        System.out.println(String.format(messages.getString("cli_problems"), crl.size()));
-
-        for(CheckResult cr : crl) {
-            if(!cr.ok()) {
-                System.out.format("%s (%s):\n", cr.sourcePath(), cr.destinationPath());
-                if(!cr.notInDestination().isEmpty()) {
-                    System.out.println(String.format(messages.getString("cli_not_in_destination"), cr.notInDestination().size()));
-                    for(File f : cr.notInDestination()) {
-                        System.out.format(" - %s%s\n", f.isDirectory() ? "[D] " : "", f.getName());
-                    }
-                }
-                if(!cr.conflicts().isEmpty()) {
-                    System.out.println(String.format(messages.getString("cli_conflict"), cr.conflicts().size()));
-                    for(File f : cr.conflicts()) {
-                        System.out.format(" - %s%s (%s)\n", f.isDirectory() ? "[D] " : "", f.getName(), cr.conflictDetails().get(f).getMessage());
-                    }
-                }
-                if(!cr.notInSource().isEmpty()) {
-                    System.out.println(String.format(messages.getString("cli_not_in_source"), cr.notInSource().size()));
-                    for(File f : cr.notInSource()) {
-                        System.out.format(" - %s%s\n", f.isDirectory() ? "[D] " : "", f.getName());
-                    }
+        results.close();
+        if(manifestEntries >= 0) {
+            info.println(String.format(messages.getString("process_manifest_written"), cc.manifestFile, manifestEntries));
+        }
+        info.println(String.format(messages.getString("status_progress_final"), meta.numberOfFiles(), meta.numberOfDirectories(), formatTime(checkDuration)));
+        if(scan != null) {
+            info.println(String.format(messages.getString("process_pre_scan_totals"), scan.files(true), formatBytes(scan.bytes(true)), scan.files(false), formatBytes(scan.bytes(false))));
+        }
+        if(config.checksum()) {
+            CheckMeta.Snapshot ms = meta.snapshot();
+            info.println(String.format(messages.getString("cli_hash_stats"),
+                ms.filesHashed(true), formatBytes(ms.bytesHashed(true)),
+                ms.filesHashed(false), formatBytes(ms.bytesHashed(false)),
+                formatTime(Duration.ofNanos(ms.hashWaitNanos()))));
+        }
+        if(cache != null) {
+            info.println(String.format(messages.getString("cli_cache_stats"), cache.hits(), cache.misses()));
+        }
+        if(journal != null) {
+            info.println(String.format(messages.getString("cli_journal_stats"), journal.skipped(), journal.verified()));
+        }
+        if(config.metrics() != null) {
+            printMetrics(info, messages, config.metrics());
+        }
+        info.println(String.format(messages.getString("cli_problems"), results.problems()));
+    }
+
+    private static void printMetrics(PrintStream out, ResourceBundle messages, CheckMetrics metrics) {
+        out.println(messages.getString("cli_metrics_title"));
+        out.format("%-20s %10s %12s %12s %12s %12s %12s\n", messages.getString("cli_metrics_phase"), messages.getString("cli_metrics_count"),
+            messages.getString("cli_metrics_total"), messages.getString("cli_metrics_mean"), "p50", "p99", messages.getString("cli_metrics_max"));
+        for(PhaseStatistics ps : metrics.getPhases()) {
+            if(ps.getCount() == 0) {
+                continue;
+            }
+            out.format("%-20s %10d %12s %12s %12s %12s %12s\n", ps.getName(), ps.getCount(),
+                formatNanos(ps.getTotalNanos()), formatNanos(ps.getMeanNanos()), formatNanos(ps.getP50Nanos()), formatNanos(ps.getP99Nanos()), formatNanos(ps.getMaxNanos()));
+        }
+    }
+
+    private static String formatNanos(long nanos) {
+        if(nanos < 1000L * 1000L) {
+            return String.format("%.1f us", nanos / 1000.0);
+        }
+        if(nanos < 1000L * 1000L * 1000L) {
+            return String.format("%.1f ms", nanos / (1000.0 * 1000.0));
+        }
+        return String.format("%.2f s", nanos / (1000.0 * 1000.0 * 1000.0));
+    }
+
+    private static void convertSums(CheckCopy cc, ResourceBundle messages) throws IOException {
+        if(cc.manifestFile == null || (cc.importSums != null && cc.exportSums != null)) {
+            System.err.println(messages.getString("cli_error_manifest"));
+            return;
+        }
+        Path manifestFile = Paths.get(cc.manifestFile);
+        if(cc.importSums != null) {
+            int entries = Manifest.importSums(Paths.get(cc.importSums), manifestFile);
+            System.out.println(String.format(messages.getString("process_manifest_written"), cc.manifestFile, entries));
+        } else {
+            try(Manifest manifest = Manifest.open(manifestFile)) {
+                if(!manifest.exportable()) {
+                    System.err.println(String.format(messages.getString("cli_error_export_kind"), manifest.digestKind()));
+                    return;
                 }
+                int entries = manifest.exportSums(Paths.get(cc.exportSums));
+                System.out.println(String.format(messages.getString("process_sums_written"), cc.exportSums, entries));
             }
         }
     }
 
+    public ResultWriter resultWriter(ResourceBundle messages) throws IOException {
+        Writer out;
+        boolean close = outputFile != null;
+        if(close) {
+            out = Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8);
+        } else {
+            out = new BufferedWriter(new OutputStreamWriter(System.out));
+        }
+        switch(outputFormat) {
+            case FORMAT_JSONL:
+                return new JsonLinesResultWriter(out, close);
+            case FORMAT_CSV:
+                return new CsvResultWriter(out, close);
+            default:
+                return new TextResultWriter(out, close, messages);
+        }
+    }
+
+    public ChecksumReader checksumReader() {
+        return new ChecksumReader(bufferSizeKiB * 1024, mapThresholdMiB * 1024 * 1024);
+    }
+
+    public SampleLayout sampleLayout() {
+        return sampleBlocks > 0 ? new SampleLayout(sampleBlocks, sampleBlockSizeKiB * 1024) : null;
+    }
+
+    public TreeHash treeHash() {
+        return treeChunkMiB > 0 && treeThreads > 0 ? new TreeHash(treeChunkMiB * 1024L * 1024L, new ForkJoinPool(treeThreads)) : null;
+    }
+
+    public AsyncReads asyncReads() {
+        return asyncReadDepth > 0 ? new AsyncReads(asyncReadDepth) : null;
+    }
+
+    // malformed overrides are ignored here, main reports them
+    public IoScheduler ioScheduler() {
+        if(!ioScheduler && ioDevices == null) {
+            return null;
+        }
+        Map<String, Integer> overrides = ioDevices != null ? IoScheduler.parseOverrides(ioDevices) : null;
+        return new IoScheduler(overrides != null ? overrides : Collections.emptyMap());
+    }
+
     public static List<CheckResult> checkCopy(CheckControl config, CheckMeta meta, Path source, Path destination) throws IOException {
-        log.debug("Checking {} | {}", source, destination);
         if(config.cancelled()) {
             log.info("Operation cancelled...");
             return Collections.emptyList();
         }
+        if(config.metrics() != null) {
+            config.metrics().meta(meta);
+        }
+        if(config.ioScheduler() != null) {
+            config.ioScheduler().register(source);
+            config.ioScheduler().register(destination);
+        }
+
+        List<CheckResult> result;
+        if(config.traversalPool() != null) {
+            result = ForkJoinTraversal.checkCopy(config, meta, source, destination);
+        } else {
+            result = walk(config, meta, source, destination);
+        }
+
+        if(config.checksumPipeline() != null) {
+            config.checksumPipeline().drain();
+            if(config.journal() != null) {
+                config.journal().drain();
+            }
+            // directories with queued checksums were kept until now
+            result.removeIf(CheckResult::ok);
+        }
+
+        return result;
+    }
 
+    static void report(CheckControl config, Collection<CheckResult> result, CheckResult cr) throws IOException {
+        if(config.resultSink() != null) {
+            settle(config, cr);
+        } else if(!cr.ok() || cr.deferred()) {
+            result.add(cr);
+        }
+    }
+
+    // hands a directory to the sink once nothing is pending for it any more
+    static void settle(CheckControl config, CheckResult cr) throws IOException {
+        if(cr.settle() && config.resultSink() != null && !cr.ok()) {
+            config.resultSink().accept(cr);
+        }
+    }
+
+    // the source is listed and hashed once for all replicas
+    public static List<CheckResult> checkCopy(CheckControl config, CheckMeta meta, Path source, List<Path> destinations) throws IOException {
+        if(destinations.size() == 1) {
+            return checkCopy(config, meta, source, destinations.get(0));
+        }
+        if(config.cancelled()) {
+            log.info("Operation cancelled...");
+            return Collections.emptyList();
+        }
+        if(config.metrics() != null) {
+            config.metrics().meta(meta);
+        }
+        if(config.ioScheduler() != null) {
+            config.ioScheduler().register(source);
+            for(Path d : destinations) {
+                config.ioScheduler().register(d);
+            }
+        }
+        return ReplicaTraversal.checkCopy(config, meta, source, destinations);
+    }
+
+    private static List<CheckResult> walk(CheckControl config, CheckMeta meta, Path source, Path destination) throws IOException {
         List<CheckResult> result = new LinkedList<>();
-        File sourceDir = source.toFile();
-        File destDir = destination.toFile();
+        Deque<Path []> pending = new ArrayDeque<>();
+        pending.push(new Path [] { source, destination });
+
+        List<Path> subdirectories = new ArrayList<>();
+        while(!pending.isEmpty()) {
+            Path [] pair = pending.pop();
+            subdirectories.clear();
+
+            CheckResult cr = checkDirectory(config, meta, pair[0], pair[1], subdirectories);
+            report(config, result, cr);
+
+            // reverse order keeps the depth-first order of the listing
+            ListIterator<Path> li = subdirectories.listIterator(subdirectories.size());
+            while(li.hasPrevious()) {
+                Path name = li.previous();
+                pending.push(new Path [] { pair[0].resolve(name), pair[1].resolve(name) });
+            }
+        }
+
+        return result;
+    }
 
-        if(!sourceDir.isDirectory()) {
-            throw new NotADirectoryException(true, sourceDir.getPath());
+    static CheckResult checkDirectory(CheckControl config, CheckMeta meta, Path source, Path destination, List<Path> subdirectories) throws IOException {
+        log.debug("Checking {} | {}", source, destination);
+        config.checkCancelled();
+
+        if(!Files.isDirectory(source)) {
+            throw new NotADirectoryException(true, source.toString());
         }
-        if(!destDir.isDirectory()) {
-            throw new NotADirectoryException(false, destDir.getPath());
+        if(!Files.isDirectory(destination)) {
+            throw new NotADirectoryException(false, destination.toString());
         }
 
-        File [] sourceFiles = sourceDir.listFiles();
-        File [] destinationFiles = destDir.listFiles();
+        List<FileEntry> sourceFiles;
+        List<FileEntry> destinationFiles;
+
+        try {
+            sourceFiles = FileEntry.list(source, config, true);
+        } catch (IOException e) {
+            log.debug("Unable to list {}", source, e);
+            throw new DirectoryReadException(true, source.toString());
+        }
+        try {
+            destinationFiles = FileEntry.list(destination, config, false);
+        } catch (IOException e) {
+            log.debug("Unable to list {}", destination, e);
+            throw new DirectoryReadException(false, destination.toString());
+        }
 
-        if(sourceFiles == null) {
-            throw new DirectoryReadException(true, sourceDir.getPath());
+        if(meta != null) {
+            meta.addListed(true, listedBytes(sourceFiles));
+            meta.addListed(false, listedBytes(destinationFiles));
         }
-        if(destinationFiles == null) {
-            throw new DirectoryReadException(false, destDir.getPath());
+
+        CheckResult cr = new CheckResult(source, destination, config.verificationTier());
+
+        Journal journal = config.journal();
+        long sourceFingerprint = 0L;
+        long destinationFingerprint = 0L;
+        if(journal != null) {
+            sourceFingerprint = Journal.fingerprint(sourceFiles);
+            destinationFingerprint = Journal.fingerprint(destinationFiles);
+            if(journal.unchanged(source, destination, sourceFingerprint, destinationFingerprint)) {
+                log.debug("Unchanged since last verification - skipping {}", source);
+                for(FileEntry es : sourceFiles) {
+                    if(meta != null) {
+                        if(es.isDirectory()) {
+                            meta.incDirectories();
+                        } else {
+                            meta.incFiles(es.size());
+                        }
+                    }
+                    if(es.isDirectory()) {
+                        subdirectories.add(es.path().getFileName());
+                    }
+                }
+                return cr;
+            }
         }
 
-        CheckResult cr = new CheckResult(source, destination);
+        long matchStart = System.nanoTime();
+        Map<String, FileEntry> destinationIndex = indexByName(destinationFiles);
+        Set<String> sourceNames = names(sourceFiles);
+        if(config.metrics() != null) {
+            config.metrics().record(CheckMetrics.Phase.MATCHING, System.nanoTime() - matchStart);
+        }
 
-        for(File fs : sourceFiles) {
+        for(FileEntry es : FileOrder.of(config, sourceFiles)) {
             config.checkCancelled();
 
-            String fsn = fs.getName();
-            boolean fsd = fs.isDirectory();
+            File fs = es.file();
+            String fsn = es.name();
+            boolean fsd = es.isDirectory();
             boolean found = false;
             boolean fail = false;
-            for(File fd : destinationFiles) {
-                config.checkCancelled();
+            // a queued pair is counted by the pipeline once its digests are compared
+            boolean queued = false;
+            FileEntry ed = destinationIndex.get(fsn);
+            if(ed != null) {
+                File fd = ed.file();
+                found = true;
+                if(fsd != ed.isDirectory()) {
+                    TypeConflict tc = TypeConflict.causedBy(!fsd);
+                    cr.addConflict(fs, tc, VerificationTier.EXISTENCE);
+                    if(config.eventListener()!=null) {
+                        config.eventListener().onConflict(config, source, destination, fs, fd, tc);
+                    }
+                    fail = true;
+                } else {
+                    if(!fsd && (config.checkSize() || config.checksum() || config.compareContent())) {
+                        long sl = es.size();
+                        long dl = ed.size();
 
-                if(fsn.equals(fd.getName())) {
-                    found = true;
-                    if(fsd != fd.isDirectory()) {
-                        TypeConflict tc = TypeConflict.causedBy(!fsd);
-                        cr.addConflict(fs, tc);
-                        if(config.eventListener()!=null) {
-                            config.eventListener().onConflict(config, source, destination, fs, fd, tc);
-                        }
-                        fail = true;
-                    } else {
-                        if(!fsd && (config.checkSize() || config.checksum())) {
-                            long sl = fs.length();
-                            long dl = fd.length();
-
-                            if(sl != dl) {
-                                log.debug("{} - File sizes do not match - {} / {}", fsn, sl, dl);
-                                found = false;
-                                SizeConflict sc = SizeConflict.causedBy(sl, dl);
-                                cr.addConflict(fs, sc);
-                                if(config.eventListener()!=null) {
-                                    config.eventListener().onConflict(config, source, destination, fs, fd, sc);
-                                }
-                            } else {
-                                if (config.checksum()) {
-                                    log.debug("Creating checksum for {}", fsn);
-                                    byte [] scs = null;
-                                    byte [] dcs = null;
-                                    if(config.executor() != null) {
-                                        Future<byte []> fscs =
-                                            config.
-                                                executor().
-                                                    submit(
-                                                        new ChecksumCallable(config, config.messageDigestS(), fs)
-                                                    );
-                                        Future<byte []> dscs =
-                                            config.
-                                                executor().
-                                                    submit(
-                                                        new ChecksumCallable(config, config.messageDigestD(), fd)
-                                                    );
-                                        try {
-                                            scs = fscs.get();
-                                        } catch (Exception e) {
-                                            throw new ChecksumException(fs.getPath());
-                                        }
-                                        try {
-                                            dcs = dscs.get();
-                                        } catch (Exception e) {
-                                            throw new ChecksumException(fd.getPath());
-                                        }
-                                    } else {
-                                        scs = createChecksum(config, config.messageDigestS(), fs);
-                                        dcs = createChecksum(config, config.messageDigestD(), fd);
-                                    }
-                                    config.checkCancelled();
+                        if(sl != dl) {
+                            log.debug("{} - File sizes do not match - {} / {}", fsn, sl, dl);
+                            found = false;
+                            SizeConflict sc = SizeConflict.causedBy(sl, dl);
+                            cr.addConflict(fs, sc, VerificationTier.SIZE);
+                            if(config.eventListener()!=null) {
+                                config.eventListener().onConflict(config, source, destination, fs, fd, sc);
+                            }
+                        } else {
+                            if (config.compareContent()) {
+                                log.debug("Comparing content of {}", fsn);
+                                long offset = compareContent(config, fs, fd);
 
-                                    if (scs == null) {
-                                        throw new ChecksumException(fs.getPath());
-                                    }
-                                    if (dcs == null) {
-                                        throw new ChecksumException(fd.getPath());
-                                    }
+                                if (offset != ContentComparator.EQUAL) {
+                                    log.debug("Content mismatch found at {}!", offset);
+
+                                    found = false;
 
-                                    String scss = digestToHex(scs);
-                                    String dcss = digestToHex(dcs);
+                                    ContentConflict cc = ContentConflict.causedBy(offset);
+                                    cr.addConflict(fs, cc, VerificationTier.CONTENT);
+                                    if(config.eventListener()!=null) {
+                                        config.eventListener().onConflict(config, source, destination, fs, fd, cc);
+                                    }
+                                }
+                            } else if (config.checksum()) {
+                                if (config.checksumPipeline() != null) {
+                                    log.debug("Queueing checksum for {}", fsn);
+                                    config.checksumPipeline().submit(cr, meta, source, destination, es, ed);
+                                    queued = true;
+                                } else {
+                                    log.debug("Creating checksum for {}", fsn);
+                                    byte [][] checksums = checksums(config, meta, es, ed);
+                                    byte [] scs = checksums[0];
+                                    byte [] dcs = checksums[1];
 
-                                    if (!scss.equals(dcss)) {
+                                    if (!MessageDigest.isEqual(scs, dcs)) {
                                         log.debug("Checksum mismatch found!");
 
                                         found = false;
 
-                                        ChecksumConflict cc = ChecksumConflict.causedBy(scss, dcss);
-                                        cr.addConflict(fs, cc);
+                                        ChecksumConflict cc = ChecksumConflict.causedBy(digestToHex(scs), digestToHex(dcs), config.checksumReader().treeChunkSize(es.size()));
+                                        cr.addConflict(fs, cc, config.checksumTier(es.size()));
                                         if(config.eventListener()!=null) {
                                             config.eventListener().onConflict(config, source, destination, fs, fd, cc);
                                         }
@@ -295,14 +823,13 @@ public class CheckCopy {
                             }
                         }
                     }
-                    break;
                 }
             }
             if(meta != null) {
                 if(fsd) {
                     meta.incDirectories();
-                } else {
-                    meta.incFiles();
+                } else if(!queued) {
+                    meta.incFiles(es.size());
                 }
             }
             if(!found) {
@@ -316,22 +843,15 @@ public class CheckCopy {
                 break;
             }
         }
-        for(File fd : destinationFiles) {
+
+        for(FileEntry ed : destinationFiles) {
             config.checkCancelled();
 
-            String fdn = fd.getName();
-            boolean found = false;
             boolean fail = false;
-            for(File fs : sourceFiles) {
-                if(fdn.equals(fs.getName())) {
-                    found = true;
-                    break;
-                }
-            }
-            if(!found) {
-                cr.addNotInSource(fd);
+            if(!sourceNames.contains(ed.name())) {
+                cr.addNotInSource(ed.file());
                 if(config.eventListener()!=null) {
-                    config.eventListener().onNotInSource(config, source, destination, fd);
+                    config.eventListener().onNotInSource(config, source, destination, ed.file());
                 }
                 fail = true;
             }
@@ -340,48 +860,275 @@ public class CheckCopy {
             }
         }
 
-        if(!cr.ok()) {
-            result.add(cr);
-        }
-
         if(!config.failFast() || cr.ok()) {
-            for (File fs : sourceFiles) {
+            for (FileEntry es : sourceFiles) {
                 config.checkCancelled();
-                if (fs.isDirectory() && !cr.notInDestination().contains(fs)) {
-                    result.addAll(checkCopy(config, meta, source.resolve(fs.getName()), destination.resolve(fs.getName())));
+                if (es.isDirectory() && !cr.isNotInDestination(es.file())) {
+                    subdirectories.add(es.path().getFileName());
                 }
             }
         }
 
-        return result;
+        if(journal != null) {
+            journal.record(cr, source, destination, sourceFingerprint, destinationFingerprint);
+        }
+
+        return cr;
     }
 
-    public static byte [] createChecksum(CancellationCheck cc, MessageDigest md, File f) {
-        md.reset();
-        try(FileInputStream fis = new FileInputStream(f)) {
-            byte [] buffer = new byte [64*1024];
-            int r;
-            while((r = fis.read(buffer)) > 0) {
-                if(cc.cancelled()) {
-                    log.debug("Checksum generation cancelled...");
-                    return null;
+    static void hashWait(CheckControl config, CheckMeta meta, long nanos) {
+        if(meta != null) {
+            meta.addHashWait(nanos);
+        }
+        if(config.metrics() != null) {
+            config.metrics().record(CheckMetrics.Phase.HASH_WAIT, nanos);
+        }
+    }
+
+    // name lookup between the two listings of a directory pair
+    static Map<String, FileEntry> indexByName(List<FileEntry> entries) {
+        Map<String, FileEntry> index = new HashMap<>(entries.size() * 4 / 3 + 1);
+        for(FileEntry e : entries) {
+            index.put(e.name(), e);
+        }
+        return index;
+    }
+
+    static Set<String> names(List<FileEntry> entries) {
+        Set<String> names = new HashSet<>(entries.size() * 4 / 3 + 1);
+        for(FileEntry e : entries) {
+            names.add(e.name());
+        }
+        return names;
+    }
+
+    static long listedBytes(List<FileEntry> entries) {
+        long bytes = 0L;
+        for(FileEntry e : entries) {
+            if(!e.isDirectory()) {
+                bytes += e.size();
+            }
+        }
+        return bytes;
+    }
+
+    static long compareContent(CheckControl config, File fs, File fd) throws ChecksumException {
+        long offset;
+        try {
+            offset = config.contentComparator().firstDifference(config, config.ioGovernor(), fs.toPath(), fd.toPath());
+        } catch (IOException e) {
+            log.error("Unable to compare " + fs.getName(), e);
+            throw new ChecksumException(fs.getPath());
+        }
+        config.checkCancelled();
+        return offset;
+    }
+
+    static byte [] checksum(CheckControl config, CheckMeta meta, boolean source, Hasher hasher, FileEntry e) throws ChecksumException {
+        return checksum(config, meta, source, hasher, e, null);
+    }
+
+    // without a cache the digest may land in scratch, see DigestScratch
+    static byte [] checksum(CheckControl config, CheckMeta meta, boolean source, Hasher hasher, FileEntry e, byte [] scratch) throws ChecksumException {
+        ChecksumCache cache = config.checksumCache();
+        String key = config.checksumReader().cacheKey(hasher.algorithm());
+        byte [] cs = cache != null ? cache.get(e, key) : null;
+        if(cs == null) {
+            cs = createChecksum(config, source, hasher, e.file(), cache == null ? scratch : null);
+            config.checkCancelled();
+            if(cs == null) {
+                throw new ChecksumException(e.file().getPath());
+            }
+            if(meta != null) {
+                meta.addHashed(source, config.checksumReader().hashedBytes(e.size()));
+            }
+            if(cache != null) {
+                cache.put(e, key, cs);
+            }
+        }
+        return cs;
+    }
+
+    private static byte [][] checksums(CheckControl config, CheckMeta meta, FileEntry es, FileEntry ed) throws ChecksumException {
+        File fs = es.file();
+        File fd = ed.file();
+        ChecksumCache cache = config.checksumCache();
+        String algorithm = config.checksumReader().cacheKey(config.checksumAlgorithm());
+
+        byte [] scs = cache != null ? cache.get(es, algorithm) : null;
+        byte [] dcs = cache != null ? cache.get(ed, algorithm) : null;
+        boolean computeS = scs == null;
+        boolean computeD = dcs == null;
+
+        // source and destination on one spinning disk are read one after the other
+        boolean parallel = config.executor() != null && (config.ioScheduler() == null || config.ioScheduler().overlap(fs.toPath(), fd.toPath()));
+
+        if(parallel) {
+            Future<byte []> fscs = null;
+            Future<byte []> dscs = null;
+            if(computeS) {
+                fscs =
+                    config.
+                        executor().
+                            submit(
+                                new ChecksumCallable(config, true, config.hasherS(), fs)
+                            );
+            }
+            if(computeD) {
+                dscs =
+                    config.
+                        executor().
+                            submit(
+                                new ChecksumCallable(config, false, config.hasherD(), fd)
+                            );
+            }
+            long waitStart = System.nanoTime();
+            if(fscs != null) {
+                try {
+                    scs = fscs.get();
+                } catch (Exception e) {
+                    throw new ChecksumException(fs.getPath());
                 }
-                md.update(buffer, 0, r);
             }
+            if(dscs != null) {
+                try {
+                    dcs = dscs.get();
+                } catch (Exception e) {
+                    throw new ChecksumException(fd.getPath());
+                }
+            }
+            hashWait(config, meta, System.nanoTime() - waitStart);
+        } else {
+            // the pair is compared right away, so digests nobody keeps go to scratch
+            if(computeS) {
+                scs = createChecksum(config, true, config.hasherS(), fs, cache == null ? DigestScratch.get(true, config.hasherS()) : null);
+            }
+            if(computeD) {
+                dcs = createChecksum(config, false, config.hasherD(), fd, cache == null ? DigestScratch.get(false, config.hasherD()) : null);
+            }
+        }
+        config.checkCancelled();
+
+        if (scs == null) {
+            throw new ChecksumException(fs.getPath());
+        }
+        if (dcs == null) {
+            throw new ChecksumException(fd.getPath());
+        }
+
+        if(meta != null) {
+            if(computeS) {
+                meta.addHashed(true, config.checksumReader().hashedBytes(es.size()));
+            }
+            if(computeD) {
+                meta.addHashed(false, config.checksumReader().hashedBytes(ed.size()));
+            }
+        }
+
+        if(cache != null) {
+            if(computeS) {
+                cache.put(es, algorithm, scs);
+            }
+            if(computeD) {
+                cache.put(ed, algorithm, dcs);
+            }
+        }
+
+        return new byte [][] { scs, dcs };
+    }
+
+    private static final ChecksumReader defaultReader = new ChecksumReader();
+
+    public static byte [] createChecksum(CancellationCheck cc, MessageDigest md, File f) {
+        return createChecksum(cc, defaultReader, Hashers.wrap(md), f);
+    }
+
+    static byte [] createChecksum(CheckControl config, boolean source, Hasher hasher, File f) {
+        return createChecksum(config, source, hasher, f, null);
+    }
+
+    static byte [] createChecksum(CheckControl config, boolean source, Hasher hasher, File f, byte [] out) {
+        IoScheduler scheduler = config.ioScheduler();
+        if(scheduler == null) {
+            return timedChecksum(config, source, hasher, f, out);
+        }
+        IoScheduler.Device device = scheduler.device(f.toPath());
+        try {
+            device.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            config.cancel();
+            return null;
+        }
+        try {
+            return timedChecksum(config, source, hasher, f, out);
+        } finally {
+            device.release();
+        }
+    }
+
+    private static byte [] timedChecksum(CheckControl config, boolean source, Hasher hasher, File f, byte [] out) {
+        CheckMetrics metrics = config.metrics();
+        if(metrics == null) {
+            return createChecksum(config, config.ioBudget(source), config.checksumReader(), hasher, f, out);
+        }
+        long start = System.nanoTime();
+        byte [] cs = createChecksum(config, config.ioBudget(source), config.checksumReader(), hasher, f, out);
+        metrics.record(source ? CheckMetrics.Phase.DIGEST_SOURCE : CheckMetrics.Phase.DIGEST_DESTINATION, System.nanoTime() - start);
+        return cs;
+    }
+
+    public static byte [] createChecksum(CancellationCheck cc, ChecksumReader reader, Hasher hasher, File f) {
+        return createChecksum(cc, reader, hasher, f, null);
+    }
+
+    public static byte [] createChecksum(CancellationCheck cc, ChecksumReader reader, Hasher hasher, File f, byte [] out) {
+        return createChecksum(cc, null, reader, hasher, f, out);
+    }
+
+    public static byte [] createChecksum(CancellationCheck cc, IoGovernor.Budget budget, ChecksumReader reader, Hasher hasher, File f, byte [] out) {
+        try {
+            return reader.digest(cc, budget, hasher, f.toPath(), out);
         } catch (IOException e) {
             log.error("Unable to perform digest for " + f.getName(), e);
             return null;
         }
-
-        return md.digest();
     }
 
+    private static final char [] HEX = "0123456789abcdef".toCharArray();
+
     public static String digestToHex(byte [] digest) {
-        StringBuilder sb = new StringBuilder();
-        for(byte b : digest) {
-            sb.append(String.format("%02x", b));
+        char [] hex = new char [digest.length * 2];
+        for(int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    // null if the string is not an even number of hex digits
+    public static byte [] hexToDigest(String hex) {
+        if(hex.length() % 2 != 0) {
+            return null;
+        }
+        byte [] d = new byte [hex.length() / 2];
+        for(int i = 0; i < d.length; i++) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if(hi < 0 || lo < 0) {
+                return null;
+            }
+            d[i] = (byte) ((hi << 4) | lo);
+        }
+        return d;
+    }
+
+    public static String formatBytes(long bytes) {
+        if(bytes < 1024) {
+            return bytes + " B";
         }
-        return sb.toString();
+        int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+        return String.format("%.1f %siB", bytes / (double) (1L << (unit * 10)), "KMGTPE".charAt(unit - 1));
     }
 
     public static String formatTime(Duration d) {
@@ -1,22 +1,141 @@
 package de.zvxeb.checkcopy;
 
+import java.util.concurrent.atomic.LongAdder;
+
+// progress counters; updated from any traversal or hashing thread without contention
 public class CheckMeta {
-    private int numberOfFiles;
-    private int numberOfDirectories;
+    private final LongAdder numberOfFiles = new LongAdder();
+    private final LongAdder numberOfDirectories = new LongAdder();
+    // sizes of the files counted so far, whether they were read, cached or skipped
+    private final LongAdder bytesChecked = new LongAdder();
+
+    private final LongAdder bytesListedSource = new LongAdder();
+    private final LongAdder bytesListedDestination = new LongAdder();
+    private final LongAdder bytesHashedSource = new LongAdder();
+    private final LongAdder bytesHashedDestination = new LongAdder();
+    private final LongAdder filesHashedSource = new LongAdder();
+    private final LongAdder filesHashedDestination = new LongAdder();
 
-    public void incFiles() {
-        numberOfFiles++;
+    // time the traversal spent blocked on digests of the executor
+    private final LongAdder hashWaitNanos = new LongAdder();
+
+    public void incFiles(long bytes) {
+        numberOfFiles.increment();
+        bytesChecked.add(bytes);
     }
 
     public void incDirectories() {
-        numberOfDirectories++;
+        numberOfDirectories.increment();
+    }
+
+    public void addListed(boolean source, long bytes) {
+        (source ? bytesListedSource : bytesListedDestination).add(bytes);
+    }
+
+    public void addHashed(boolean source, long bytes) {
+        if(source) {
+            filesHashedSource.increment();
+            bytesHashedSource.add(bytes);
+        } else {
+            filesHashedDestination.increment();
+            bytesHashedDestination.add(bytes);
+        }
+    }
+
+    public void addHashWait(long nanos) {
+        hashWaitNanos.add(nanos);
+    }
+
+    public long numberOfFiles() {
+        return numberOfFiles.sum();
+    }
+
+    public long numberOfDirectories() {
+        return numberOfDirectories.sum();
+    }
+
+    public long bytesChecked() {
+        return bytesChecked.sum();
+    }
+
+    public long bytesListed(boolean source) {
+        return (source ? bytesListedSource : bytesListedDestination).sum();
+    }
+
+    public long bytesHashed(boolean source) {
+        return (source ? bytesHashedSource : bytesHashedDestination).sum();
+    }
+
+    public long filesHashed(boolean source) {
+        return (source ? filesHashedSource : filesHashedDestination).sum();
+    }
+
+    public long hashWaitNanos() {
+        return hashWaitNanos.sum();
     }
 
-    public int numberOfFiles() {
-        return numberOfFiles;
+    // every counter is read exactly once, so derived values like rates stay consistent
+    public Snapshot snapshot() {
+        return new Snapshot(this);
     }
 
-    public int numberOfDirectories() {
-        return numberOfDirectories;
+    public static final class Snapshot {
+        private final long nanoTime;
+        private final long files;
+        private final long directories;
+        private final long bytesChecked;
+        private final long bytesListedSource;
+        private final long bytesListedDestination;
+        private final long bytesHashedSource;
+        private final long bytesHashedDestination;
+        private final long filesHashedSource;
+        private final long filesHashedDestination;
+        private final long hashWaitNanos;
+
+        private Snapshot(CheckMeta meta) {
+            this.nanoTime = System.nanoTime();
+            this.files = meta.numberOfFiles.sum();
+            this.directories = meta.numberOfDirectories.sum();
+            this.bytesChecked = meta.bytesChecked.sum();
+            this.bytesListedSource = meta.bytesListedSource.sum();
+            this.bytesListedDestination = meta.bytesListedDestination.sum();
+            this.bytesHashedSource = meta.bytesHashedSource.sum();
+            this.bytesHashedDestination = meta.bytesHashedDestination.sum();
+            this.filesHashedSource = meta.filesHashedSource.sum();
+            this.filesHashedDestination = meta.filesHashedDestination.sum();
+            this.hashWaitNanos = meta.hashWaitNanos.sum();
+        }
+
+        public long nanoTime() {
+            return nanoTime;
+        }
+
+        public long files() {
+            return files;
+        }
+
+        public long directories() {
+            return directories;
+        }
+
+        public long bytesChecked() {
+            return bytesChecked;
+        }
+
+        public long bytesListed(boolean source) {
+            return source ? bytesListedSource : bytesListedDestination;
+        }
+
+        public long bytesHashed(boolean source) {
+            return source ? bytesHashedSource : bytesHashedDestination;
+        }
+
+        public long filesHashed(boolean source) {
+            return source ? filesHashedSource : filesHashedDestination;
+        }
+
+        public long hashWaitNanos() {
+            return hashWaitNanos;
+        }
     }
 }
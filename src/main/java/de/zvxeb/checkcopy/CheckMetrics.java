@@ -0,0 +1,158 @@
+package de.zvxeb.checkcopy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// time spent per phase of a run; each phase keeps a count, a total, a maximum and
+// a power-of-two histogram of the durations, all updatable without contention
+public class CheckMetrics implements CheckMetricsMXBean {
+    private static Logger log = LoggerFactory.getLogger(CheckMetrics.class);
+
+    private static final AtomicInteger runs = new AtomicInteger();
+
+    public enum Phase {
+        LISTING,
+        ATTRIBUTES,
+        MATCHING,
+        DIGEST_SOURCE,
+        DIGEST_DESTINATION,
+        HASH_WAIT,
+        CALLBACKS;
+
+        public String label() {
+            return name().toLowerCase().replace('_', ' ');
+        }
+    }
+
+    private static final int BUCKETS = 64;
+
+    private static class Timings {
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+        // bucket i counts durations in [2^(i-1), 2^i) ns
+        final LongAdder [] histogram = new LongAdder [BUCKETS];
+
+        Timings() {
+            for(int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+            histogram[BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 0L))].increment();
+        }
+    }
+
+    private final Timings [] timings = new Timings [Phase.values().length];
+
+    private volatile CheckMeta meta;
+    private ObjectName objectName;
+
+    public CheckMetrics() {
+        for(int i = 0; i < timings.length; i++) {
+            timings[i] = new Timings();
+        }
+    }
+
+    public void record(Phase phase, long nanos) {
+        timings[phase.ordinal()].record(nanos);
+    }
+
+    void meta(CheckMeta meta) {
+        this.meta = meta;
+    }
+
+    public PhaseStatistics statistics(Phase phase) {
+        Timings t = timings[phase.ordinal()];
+        long [] histogram = new long [BUCKETS];
+        for(int i = 0; i < BUCKETS; i++) {
+            histogram[i] = t.histogram[i].sum();
+        }
+        return new PhaseStatistics(phase.label(), t.count.sum(), t.total.sum(), t.max.get(), histogram);
+    }
+
+    @Override
+    public PhaseStatistics [] getPhases() {
+        Phase [] phases = Phase.values();
+        PhaseStatistics [] stats = new PhaseStatistics [phases.length];
+        for(int i = 0; i < phases.length; i++) {
+            stats[i] = statistics(phases[i]);
+        }
+        return stats;
+    }
+
+    @Override
+    public long getFiles() {
+        CheckMeta m = meta;
+        return m != null ? m.numberOfFiles() : 0L;
+    }
+
+    @Override
+    public long getDirectories() {
+        CheckMeta m = meta;
+        return m != null ? m.numberOfDirectories() : 0L;
+    }
+
+    @Override
+    public long getBytesHashedSource() {
+        CheckMeta m = meta;
+        return m != null ? m.bytesHashed(true) : 0L;
+    }
+
+    @Override
+    public long getBytesHashedDestination() {
+        CheckMeta m = meta;
+        return m != null ? m.bytesHashed(false) : 0L;
+    }
+
+    @Override
+    public long getFilesHashedSource() {
+        CheckMeta m = meta;
+        return m != null ? m.filesHashed(true) : 0L;
+    }
+
+    @Override
+    public long getFilesHashedDestination() {
+        CheckMeta m = meta;
+        return m != null ? m.filesHashed(false) : 0L;
+    }
+
+    synchronized void register() {
+        if(objectName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("de.zvxeb.checkcopy:type=CheckMetrics,run=" + runs.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+            log.debug("Registered {}", name);
+        } catch (JMException e) {
+            log.warn("Unable to register metrics MBean", e);
+        }
+    }
+
+    synchronized void unregister() {
+        if(objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.warn("Unable to unregister metrics MBean " + objectName, e);
+        }
+        objectName = null;
+    }
+}
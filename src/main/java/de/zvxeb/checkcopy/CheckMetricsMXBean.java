@@ -0,0 +1,11 @@
+package de.zvxeb.checkcopy;
+
+public interface CheckMetricsMXBean {
+    PhaseStatistics [] getPhases();
+    long getFiles();
+    long getDirectories();
+    long getBytesHashedSource();
+    long getBytesHashedDestination();
+    long getFilesHashedSource();
+    long getFilesHashedDestination();
+}
@@ -9,15 +9,29 @@ import java.util.*;
 class CheckResult {
     private Path sourcePath;
     private Path destinationPath;
+    private VerificationTier tier;
     private List<File> notInDestination = new LinkedList<>();
+    private Set<File> notInDestinationIndex = new HashSet<>();
     private List<File> notInSource = new LinkedList<>();
     private List<File> conflicts = new LinkedList<>();
 
     private Map<File, Conflict> conflictDetails = new HashMap<>();
+    // the tier each conflict was found at, missing entries are found by existence
+    private Map<File, VerificationTier> entryTiers = new HashMap<>();
+
+    // checksums of this directory are still being compared in the background
+    private volatile boolean deferred = false;
+    // the directory scan itself plus every queued checksum
+    private int outstanding = 1;
 
     public CheckResult(Path sourcePath, Path destinationPath) {
+        this(sourcePath, destinationPath, VerificationTier.EXISTENCE);
+    }
+
+    public CheckResult(Path sourcePath, Path destinationPath, VerificationTier tier) {
         this.sourcePath = sourcePath;
         this.destinationPath = destinationPath;
+        this.tier = tier;
     }
 
     public Path sourcePath() {
@@ -28,35 +42,67 @@ class CheckResult {
         return destinationPath;
     }
 
-    public List<File> notInDestination() {
+    // the tier the check was run at
+    public VerificationTier tier() {
+        return tier;
+    }
+
+    // the tier the entry was reported at
+    public synchronized VerificationTier tier(File f) {
+        VerificationTier t = entryTiers.get(f);
+        return t != null ? t : VerificationTier.EXISTENCE;
+    }
+
+    public synchronized List<File> notInDestination() {
         return Collections.unmodifiableList(notInDestination);
     }
 
-    public List<File> notInSource() {
+    public synchronized boolean isNotInDestination(File f) {
+        return notInDestinationIndex.contains(f);
+    }
+
+    public synchronized List<File> notInSource() {
         return Collections.unmodifiableList(notInSource);
     }
 
-    public List<File> conflicts() {
+    public synchronized List<File> conflicts() {
         return Collections.unmodifiableList(conflicts);
     }
 
-    public boolean ok() {
+    public synchronized boolean ok() {
         return notInSource.isEmpty() && notInDestination.isEmpty() && conflicts.isEmpty();
     }
 
-    public Map<File, Conflict> conflictDetails() {
+    public synchronized Map<File, Conflict> conflictDetails() {
         return Collections.unmodifiableMap(conflictDetails);
     }
-    public void addNotInDestination(File f) {
+
+    synchronized void defer() {
+        deferred = true;
+        outstanding++;
+    }
+
+    // true once the scan and all queued checksums of this directory are done
+    synchronized boolean settle() {
+        return --outstanding == 0;
+    }
+
+    boolean deferred() {
+        return deferred;
+    }
+
+    public synchronized void addNotInDestination(File f) {
         notInDestination.add(f);
+        notInDestinationIndex.add(f);
     }
 
-    public void addNotInSource(File f) {
+    public synchronized void addNotInSource(File f) {
         notInSource.add(f);
     }
 
-    public void addConflict(File f, Conflict c) {
+    public synchronized void addConflict(File f, Conflict c, VerificationTier tier) {
         conflicts.add(f);
         conflictDetails.put(f, c);
+        entryTiers.put(f, tier);
     }
 }
@@ -0,0 +1,172 @@
+package de.zvxeb.checkcopy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// digests of earlier runs keyed by algorithm and canonical path; an entry is only
+// used while size and modification time still match the file
+public class ChecksumCache {
+    private static Logger log = LoggerFactory.getLogger(ChecksumCache.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000000;
+
+    private static final int MAGIC = 0x43434331; // "CCC1"
+
+    private final Path file;
+    private final int maxEntries;
+
+    private final LinkedHashMap<String, CachedDigest> entries;
+    private boolean modified = false;
+
+    private int hits;
+    private int misses;
+
+    private static class CachedDigest {
+        final long size;
+        final long lastModified;
+        final byte [] digest;
+
+        CachedDigest(long size, long lastModified, byte [] digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    public ChecksumCache(Path file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        // access order gives the least recently used entry first
+        this.entries = new LinkedHashMap<String, CachedDigest>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDigest> eldest) {
+                return size() > ChecksumCache.this.maxEntries;
+            }
+        };
+    }
+
+    public static ChecksumCache open(Path file, int maxEntries) throws IOException {
+        ChecksumCache cache = new ChecksumCache(file, maxEntries);
+        if(Files.isRegularFile(file)) {
+            cache.load();
+        }
+        return cache;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int hits() {
+        return hits;
+    }
+
+    public synchronized int misses() {
+        return misses;
+    }
+
+    byte [] get(FileEntry e, String algorithm) {
+        String key = key(e, algorithm);
+        if(key == null) {
+            return null;
+        }
+        return get(key, e.size(), e.lastModified());
+    }
+
+    void put(FileEntry e, String algorithm, byte [] digest) {
+        String key = key(e, algorithm);
+        if(key != null) {
+            put(key, e.size(), e.lastModified(), digest);
+        }
+    }
+
+    public synchronized byte [] get(String key, long size, long lastModified) {
+        CachedDigest e = entries.get(key);
+        if(e == null || e.size != size || e.lastModified != lastModified) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.digest.clone();
+    }
+
+    public synchronized void put(String key, long size, long lastModified, byte [] digest) {
+        entries.put(key, new CachedDigest(size, lastModified, digest.clone()));
+        modified = true;
+    }
+
+    private static String key(FileEntry e, String algorithm) {
+        try {
+            return algorithm + '\0' + e.path().toRealPath().toString();
+        } catch (IOException ex) {
+            log.debug("No canonical path for {}", e.path(), ex);
+            return null;
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC) {
+                log.warn("Ignoring checksum cache {} - unknown format", file);
+                return;
+            }
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte [] digest = new byte [in.readUnsignedShort()];
+                in.readFully(digest);
+                entries.put(key, new CachedDigest(size, lastModified, digest));
+            }
+        } catch (EOFException e) {
+            log.warn("Checksum cache {} is truncated - using {} entries", file, entries.size());
+        }
+        modified = false;
+        log.debug("Loaded {} cached checksums from {}", entries.size(), file);
+    }
+
+    public synchronized void save() throws IOException {
+        if(!modified) {
+            return;
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if(parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entries.size());
+                // least recently used first, so loading restores the same order
+                Iterator<Map.Entry<String, CachedDigest>> it = entries.entrySet().iterator();
+                while(it.hasNext()) {
+                    Map.Entry<String, CachedDigest> me = it.next();
+                    out.writeUTF(me.getKey());
+                    out.writeLong(me.getValue().size);
+                    out.writeLong(me.getValue().lastModified);
+                    out.writeShort(me.getValue().digest.length);
+                    out.write(me.getValue().digest);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        modified = false;
+        log.debug("Saved {} cached checksums to {}", entries.size(), file);
+    }
+}
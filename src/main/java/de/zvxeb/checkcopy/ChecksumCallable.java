@@ -1,23 +1,26 @@
 package de.zvxeb.checkcopy;
 
+import de.zvxeb.checkcopy.hash.Hasher;
+
 import java.io.File;
-import java.security.MessageDigest;
 import java.util.concurrent.Callable;
 
 class ChecksumCallable implements Callable<byte []> {
 
-    private CancellationCheck cc;
-    private MessageDigest md;
+    private CheckControl config;
+    private boolean source;
+    private Hasher hasher;
     private File f;
 
-    public ChecksumCallable(CancellationCheck cc, MessageDigest md, File f) {
-        this.cc = cc;
-        this.md = md;
+    public ChecksumCallable(CheckControl config, boolean source, Hasher hasher, File f) {
+        this.config = config;
+        this.source = source;
+        this.hasher = hasher;
         this.f = f;
     }
 
     @Override
     public byte[] call() throws Exception {
-        return CheckCopy.createChecksum(cc, md, f);
+        return CheckCopy.createChecksum(config, source, hasher, f);
     }
 }
@@ -0,0 +1,201 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.exception.CheckCancelledException;
+import de.zvxeb.checkcopy.exception.ChecksumException;
+import de.zvxeb.checkcopy.hash.Hasher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+// hashes file pairs on the executor while the traversal keeps walking; at most
+// 'depth' pairs are in flight and each result is compared as soon as it is ready;
+// with a window, pairs are collected across directories and started in inode order
+class ChecksumPipeline {
+    private static Logger log = LoggerFactory.getLogger(ChecksumPipeline.class);
+
+    private final CheckControl config;
+    private final int depth;
+    private final int windowSize;
+    private final Semaphore permits;
+    private final ThreadLocal<Hasher> hashers;
+
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    private final List<Job> window;
+
+    private static class Job {
+        final CheckResult cr;
+        final CheckMeta meta;
+        final Path source;
+        final Path destination;
+        final FileEntry es;
+        final FileEntry ed;
+        // only jobs collected in a window are sorted
+        final FileOrder.Keyed key;
+
+        Job(CheckResult cr, CheckMeta meta, Path source, Path destination, FileEntry es, FileEntry ed, boolean keyed) {
+            this.cr = cr;
+            this.meta = meta;
+            this.source = source;
+            this.destination = destination;
+            this.es = es;
+            this.ed = ed;
+            this.key = keyed ? new FileOrder.Keyed(es) : null;
+        }
+    }
+
+    ChecksumPipeline(CheckControl config, int depth, Hasher hasher) {
+        this(config, depth, 0, hasher);
+    }
+
+    ChecksumPipeline(CheckControl config, int depth, int window, Hasher hasher) {
+        this.config = config;
+        this.depth = depth;
+        this.windowSize = window;
+        this.window = new ArrayList<>(Math.max(window, 0));
+        this.permits = new Semaphore(depth);
+        this.hashers = ThreadLocal.withInitial(hasher::copy);
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int window() {
+        return windowSize;
+    }
+
+    void submit(CheckResult cr, CheckMeta meta, Path source, Path destination, FileEntry es, FileEntry ed) throws IOException {
+        rethrow();
+        cr.defer();
+        Job job = new Job(cr, meta, source, destination, es, ed, windowSize > 1);
+        if(windowSize <= 1) {
+            dispatch(job);
+            return;
+        }
+        List<Job> batch = null;
+        synchronized(window) {
+            window.add(job);
+            if(window.size() >= windowSize) {
+                batch = new ArrayList<>(window);
+                window.clear();
+            }
+        }
+        if(batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    private void flush() {
+        List<Job> batch;
+        synchronized(window) {
+            batch = new ArrayList<>(window);
+            window.clear();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(List<Job> batch) {
+        batch.sort((a, b) -> FileOrder.ORDER.compare(a.key, b.key));
+        for(Job j : batch) {
+            dispatch(j);
+        }
+    }
+
+    private void dispatch(Job job) {
+        CheckResult cr = job.cr;
+        CheckMeta meta = job.meta;
+        FileEntry es = job.es;
+        try {
+            // a full pipeline makes the traversal wait for the digests
+            long waitStart = System.nanoTime();
+            permits.acquire();
+            CheckCopy.hashWait(config, meta, System.nanoTime() - waitStart);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            config.cancel();
+            config.checkCancelled();
+        }
+        try {
+            config.executor().submit(() -> {
+                try {
+                    verify(cr, meta, job.source, job.destination, es, job.ed);
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (CheckCancelledException e) {
+                    log.debug("Checksum generation cancelled...");
+                } catch (RuntimeException e) {
+                    log.error("Unexpected error while hashing " + es.path(), e);
+                    failure.compareAndSet(null, new ChecksumException(es.path().toString()));
+                } finally {
+                    if(meta != null) {
+                        meta.incFiles(es.size());
+                    }
+                    try {
+                        CheckCopy.settle(config, cr);
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void verify(CheckResult cr, CheckMeta meta, Path source, Path destination, FileEntry es, FileEntry ed) throws IOException {
+        if(config.cancelled()) {
+            return;
+        }
+        Hasher h = hashers.get();
+        // both digests are computed and compared on this worker, so scratch is safe
+        byte [] scs = CheckCopy.checksum(config, meta, true, h, es, DigestScratch.get(true, h));
+        byte [] dcs = CheckCopy.checksum(config, meta, false, h, ed, DigestScratch.get(false, h));
+        if(config.cancelled()) {
+            return;
+        }
+
+        if (!MessageDigest.isEqual(scs, dcs)) {
+            log.debug("Checksum mismatch found!");
+
+            File fs = es.file();
+            File fd = ed.file();
+            ChecksumConflict cc = ChecksumConflict.causedBy(CheckCopy.digestToHex(scs), CheckCopy.digestToHex(dcs), config.checksumReader().treeChunkSize(es.size()));
+            cr.addConflict(fs, cc, config.checksumTier(es.size()));
+            if(config.eventListener()!=null) {
+                config.eventListener().onConflict(config, source, destination, fs, fd, cc);
+            }
+            cr.addNotInDestination(fs);
+            if(config.eventListener()!=null) {
+                config.eventListener().onNotInDestination(config, source, destination, fs);
+            }
+        }
+    }
+
+    // waits until every submitted pair is compared
+    void drain() throws IOException {
+        flush();
+        permits.acquireUninterruptibly(depth);
+        permits.release(depth);
+        rethrow();
+        config.checkCancelled();
+    }
+
+    private void rethrow() throws IOException {
+        IOException e = failure.get();
+        if(e != null) {
+            throw e;
+        }
+    }
+}
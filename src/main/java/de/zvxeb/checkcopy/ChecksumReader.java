@@ -0,0 +1,285 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.hash.Hasher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+public class ChecksumReader {
+    private static Logger log = LoggerFactory.getLogger(ChecksumReader.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    public static final long DEFAULT_MAP_THRESHOLD = 64L * 1024 * 1024;
+    public static final int MAP_WINDOW = 32 * 1024 * 1024;
+
+    private final int bufferSize;
+    private final long mapThreshold;
+    private final SampleLayout sampleLayout;
+    private final TreeHash treeHash;
+    private final AsyncReads asyncReads;
+
+    // one direct buffer per reading thread, reused for every file
+    private final ThreadLocal<ByteBuffer> buffers;
+
+    public ChecksumReader() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAP_THRESHOLD);
+    }
+
+    public ChecksumReader(int bufferSize, long mapThreshold) {
+        this(bufferSize, mapThreshold, null);
+    }
+
+    public ChecksumReader(int bufferSize, long mapThreshold, SampleLayout sampleLayout) {
+        this(bufferSize, mapThreshold, sampleLayout, null);
+    }
+
+    public ChecksumReader(int bufferSize, long mapThreshold, SampleLayout sampleLayout, TreeHash treeHash) {
+        this(bufferSize, mapThreshold, sampleLayout, treeHash, null);
+    }
+
+    public ChecksumReader(int bufferSize, long mapThreshold, SampleLayout sampleLayout, TreeHash treeHash, AsyncReads asyncReads) {
+        if(bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.mapThreshold = mapThreshold;
+        this.sampleLayout = sampleLayout;
+        this.treeHash = treeHash;
+        this.asyncReads = asyncReads;
+        this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(this.bufferSize));
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public long mapThreshold() {
+        return mapThreshold;
+    }
+
+    public SampleLayout sampleLayout() {
+        return sampleLayout;
+    }
+
+    public ChecksumReader sampleLayout(SampleLayout sampleLayout) {
+        return new ChecksumReader(bufferSize, mapThreshold, sampleLayout, treeHash, asyncReads);
+    }
+
+    public TreeHash treeHash() {
+        return treeHash;
+    }
+
+    public ChecksumReader treeHash(TreeHash treeHash) {
+        return new ChecksumReader(bufferSize, mapThreshold, sampleLayout, treeHash, asyncReads);
+    }
+
+    public AsyncReads asyncReads() {
+        return asyncReads;
+    }
+
+    public ChecksumReader asyncReads(AsyncReads asyncReads) {
+        return new ChecksumReader(bufferSize, mapThreshold, sampleLayout, treeHash, asyncReads);
+    }
+
+    // sampled and tree digests must never be mixed with full digests in the cache
+    public String cacheKey(String algorithm) {
+        String key = algorithm;
+        if(sampleLayout != null) {
+            key += "/" + sampleLayout;
+        }
+        if(treeHash != null) {
+            key += "/" + treeHash;
+        }
+        return key;
+    }
+
+    // chunk size if a file of this size gets a tree digest, otherwise 0
+    public long treeChunkSize(long size) {
+        if(treeHash == null || !treeHash.applies(size) || (sampleLayout != null && sampleLayout.sampled(size))) {
+            return 0L;
+        }
+        return treeHash.chunkSize();
+    }
+
+    // bytes a digest of a file of this size reads
+    public long hashedBytes(long size) {
+        if(sampleLayout != null && sampleLayout.sampled(size)) {
+            return Math.min(size, (long) sampleLayout.offsets(size).length * sampleLayout.blockSize());
+        }
+        return size;
+    }
+
+    public boolean mapped(long size) {
+        return mapThreshold > 0 && size >= mapThreshold;
+    }
+
+    public byte [] digest(CancellationCheck cc, Hasher hasher, Path p) throws IOException {
+        return digest(cc, hasher, p, null);
+    }
+
+    // writes the digest into out and returns it if out has the digest length,
+    // otherwise a new array is returned
+    public byte [] digest(CancellationCheck cc, Hasher hasher, Path p, byte [] out) throws IOException {
+        return digest(cc, null, hasher, p, out);
+    }
+
+    // every read is charged to the budget, if there is one
+    public byte [] digest(CancellationCheck cc, IoGovernor.Budget budget, Hasher hasher, Path p, byte [] out) throws IOException {
+        hasher.reset();
+        if(budget != null) {
+            budget.op(cc);
+        }
+        if(asyncReads != null) {
+            try(AsynchronousFileChannel afc = AsynchronousFileChannel.open(p, Collections.singleton(StandardOpenOption.READ), asyncReads.pool())) {
+                long size = afc.size();
+                // sampled and tree digests read positionally on their own
+                if(!(sampleLayout != null && sampleLayout.sampled(size)) && !(treeHash != null && treeHash.applies(size))) {
+                    if(!asyncReads.digest(cc, budget, hasher, afc, size, bufferSize)) {
+                        log.debug("Checksum generation cancelled...");
+                        return null;
+                    }
+                    return complete(hasher, out);
+                }
+            }
+        }
+        try(FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            long size = fc.size();
+            boolean complete;
+            if(sampleLayout != null && sampleLayout.sampled(size)) {
+                complete = digestSampled(cc, budget, hasher, fc, sampleLayout.offsets(size));
+            } else if(treeHash != null && treeHash.applies(size)) {
+                byte [] root = treeHash.digest(this, cc, budget, hasher, fc, size);
+                if(root == null) {
+                    log.debug("Checksum generation cancelled...");
+                } else if(out != null && out.length == root.length) {
+                    System.arraycopy(root, 0, out, 0, root.length);
+                    return out;
+                }
+                return root;
+            } else {
+                complete = mapped(size) ? digestMapped(cc, budget, hasher, fc, size) : digestBuffered(cc, budget, hasher, fc);
+            }
+            if(!complete) {
+                log.debug("Checksum generation cancelled...");
+                return null;
+            }
+        }
+        return complete(hasher, out);
+    }
+
+    private static byte [] complete(Hasher hasher, byte [] out) {
+        if(out != null && out.length == hasher.digestLength()) {
+            hasher.digest(out);
+            return out;
+        }
+        return hasher.digest();
+    }
+
+    private boolean digestBuffered(CancellationCheck cc, IoGovernor.Budget budget, Hasher hasher, FileChannel fc) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        int r;
+        while((r = fc.read(buffer)) > 0) {
+            if(budget != null) {
+                budget.read(cc, r);
+            }
+            if(cc.cancelled()) {
+                return false;
+            }
+            buffer.flip();
+            hasher.update(buffer);
+            buffer.clear();
+        }
+        return true;
+    }
+
+    // hashes one range with positional reads, so several threads can share the channel
+    byte [] digestRange(CancellationCheck cc, IoGovernor.Budget budget, Hasher hasher, FileChannel fc, long start, long length) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        hasher.reset();
+        long position = start;
+        long end = start + length;
+        while(position < end) {
+            if(cc.cancelled()) {
+                return null;
+            }
+            buffer.clear();
+            if(end - position < buffer.capacity()) {
+                buffer.limit((int) (end - position));
+            }
+            int r = fc.read(buffer, position);
+            if(r < 0) {
+                break;
+            }
+            if(budget != null) {
+                budget.read(cc, r);
+            }
+            buffer.flip();
+            hasher.update(buffer);
+            position += r;
+        }
+        return hasher.digest();
+    }
+
+    private boolean digestSampled(CancellationCheck cc, IoGovernor.Budget budget, Hasher hasher, FileChannel fc, long [] offsets) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        for(long offset : offsets) {
+            long position = offset;
+            long end = offset + sampleLayout.blockSize();
+            while(position < end) {
+                if(cc.cancelled()) {
+                    return false;
+                }
+                buffer.clear();
+                if(end - position < buffer.capacity()) {
+                    buffer.limit((int) (end - position));
+                }
+                int r = fc.read(buffer, position);
+                if(r < 0) {
+                    break;
+                }
+                if(budget != null) {
+                    budget.read(cc, r);
+                }
+                buffer.flip();
+                hasher.update(buffer);
+                position += r;
+            }
+        }
+        return true;
+    }
+
+    private boolean digestMapped(CancellationCheck cc, IoGovernor.Budget budget, Hasher hasher, FileChannel fc, long size) throws IOException {
+        long position = 0;
+        while(position < size) {
+            if(cc.cancelled()) {
+                return false;
+            }
+            long window = Math.min(MAP_WINDOW, size - position);
+            MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_ONLY, position, window);
+            if(budget == null) {
+                hasher.update(mbb);
+            } else {
+                // pages are read while they are hashed, so the window is charged in buffer sized steps
+                while(mbb.hasRemaining()) {
+                    int n = Math.min(bufferSize, mbb.remaining());
+                    budget.read(cc, n);
+                    ByteBuffer slice = mbb.slice();
+                    slice.limit(n);
+                    hasher.update(slice);
+                    mbb.position(mbb.position() + n);
+                }
+            }
+            position += window;
+        }
+        return true;
+    }
+}
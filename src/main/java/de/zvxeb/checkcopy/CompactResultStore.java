@@ -0,0 +1,364 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.conflict.Conflict;
+import de.zvxeb.checkcopy.conflict.ContentConflict;
+import de.zvxeb.checkcopy.conflict.SizeConflict;
+import de.zvxeb.checkcopy.conflict.TypeConflict;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+// keeps very large reports in memory without a File and a message string per entry:
+// directories are interned path segments, names live in one UTF-8 pool, entry kind and
+// conflict type are codes in parallel arrays and digests are kept as raw bytes;
+// messages are only formatted when an entry is displayed
+public class CompactResultStore implements ResultSink {
+    public static final byte NOT_IN_DESTINATION = 0;
+    public static final byte NOT_IN_SOURCE = 1;
+    public static final byte CONFLICT = 2;
+
+    public static final byte CONFLICT_NONE = 0;
+    public static final byte CONFLICT_TYPE_FILE = 1;
+    public static final byte CONFLICT_TYPE_DIRECTORY = 2;
+    public static final byte CONFLICT_SIZE = 3;
+    public static final byte CONFLICT_CHECKSUM = 4;
+    public static final byte CONFLICT_CONTENT = 5;
+
+    private static final int KIND_MASK = 0x03;
+    private static final int CONFLICT_SHIFT = 2;
+    private static final int CONFLICT_MASK = 0x07;
+    private static final int DIRECTORY_FLAG = 0x40;
+
+    private static final VerificationTier [] TIERS = VerificationTier.values();
+
+    // path segment trie: node = (parent node, segment)
+    private final Map<String, Integer> segmentIndex = new HashMap<>();
+    private final List<String> segments = new ArrayList<>();
+    private final Map<Long, Integer> nodeIndex = new HashMap<>();
+    private int [] nodeParent = new int [64];
+    private int [] nodeSegment = new int [64];
+    private int nodes;
+
+    // one pair per reported directory
+    private int [] pairSource = new int [64];
+    private int [] pairDestination = new int [64];
+    private int pairs;
+
+    private int [] entryPair = new int [256];
+    private int [] entryName = new int [256];
+    private byte [] entryCode = new byte [256];
+    private byte [] entryTier = new byte [256];
+    private int [] entryDetail = new int [256];
+    private int entries;
+
+    // conflict details: sizes, offset or tree chunk size and the digest pool offset
+    private long [] detailA = new long [64];
+    private long [] detailB = new long [64];
+    private int [] detailDigest = new int [64];
+    private int details;
+
+    private byte [] namePool = new byte [4096];
+    private int namePoolSize;
+
+    private byte [] digestPool = new byte [1024];
+    private int digestPoolSize;
+
+    @Override
+    public synchronized void accept(CheckResult cr) {
+        int pair = addPair(cr.sourcePath(), cr.destinationPath());
+        // names of one directory repeat between the lists, store each once
+        Map<String, Integer> names = new HashMap<>();
+        for(File f : cr.notInDestination()) {
+            addEntry(pair, name(names, f), NOT_IN_DESTINATION, f.isDirectory(), cr.tier(f), null);
+        }
+        for(File f : cr.notInSource()) {
+            addEntry(pair, name(names, f), NOT_IN_SOURCE, f.isDirectory(), cr.tier(f), null);
+        }
+        for(File f : cr.conflicts()) {
+            addEntry(pair, name(names, f), CONFLICT, f.isDirectory(), cr.tier(f), cr.conflictDetails().get(f));
+        }
+    }
+
+    public synchronized int size() {
+        return entries;
+    }
+
+    public synchronized int directories() {
+        return pairs;
+    }
+
+    public synchronized byte kind(int i) {
+        return (byte) (entryCode[check(i)] & KIND_MASK);
+    }
+
+    public synchronized byte conflict(int i) {
+        return (byte) ((entryCode[check(i)] >> CONFLICT_SHIFT) & CONFLICT_MASK);
+    }
+
+    public synchronized boolean isDirectory(int i) {
+        return (entryCode[check(i)] & DIRECTORY_FLAG) != 0;
+    }
+
+    public synchronized String name(int i) {
+        int offset = entryName[check(i)];
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = namePool[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return new String(namePool, offset, length, StandardCharsets.UTF_8);
+    }
+
+    public synchronized int directory(int i) {
+        return entryPair[check(i)];
+    }
+
+    public synchronized Path sourceDirectory(int i) {
+        return Paths.get(path(pairSource[entryPair[check(i)]]));
+    }
+
+    public synchronized Path destinationDirectory(int i) {
+        return Paths.get(path(pairDestination[entryPair[check(i)]]));
+    }
+
+    public synchronized VerificationTier tier(int i) {
+        return TIERS[entryTier[check(i)]];
+    }
+
+    public synchronized long sourceSize(int i) {
+        return conflict(i) == CONFLICT_SIZE ? detailA[entryDetail[i]] : -1L;
+    }
+
+    public synchronized long destinationSize(int i) {
+        return conflict(i) == CONFLICT_SIZE ? detailB[entryDetail[i]] : -1L;
+    }
+
+    public synchronized long offset(int i) {
+        return conflict(i) == CONFLICT_CONTENT ? detailA[entryDetail[i]] : -1L;
+    }
+
+    public synchronized long treeChunkSize(int i) {
+        return conflict(i) == CONFLICT_CHECKSUM ? detailB[entryDetail[i]] : 0L;
+    }
+
+    public synchronized byte [] sourceDigest(int i) {
+        return digest(i, 0);
+    }
+
+    public synchronized byte [] destinationDigest(int i) {
+        return digest(i, 1);
+    }
+
+    // formatted on demand, the store itself keeps no strings per entry
+    public synchronized String message(int i, ResourceBundle messages) {
+        switch(conflict(i)) {
+            case CONFLICT_TYPE_FILE:
+                return messages.getString("conflict_type_file");
+            case CONFLICT_TYPE_DIRECTORY:
+                return messages.getString("conflict_type_directory");
+            case CONFLICT_SIZE:
+                return String.format(messages.getString("conflict_size"), sourceSize(i), destinationSize(i));
+            case CONFLICT_CONTENT:
+                return String.format(messages.getString("conflict_content"), offset(i));
+            case CONFLICT_CHECKSUM:
+                String s = CheckCopy.digestToHex(sourceDigest(i));
+                String d = CheckCopy.digestToHex(destinationDigest(i));
+                long chunk = treeChunkSize(i);
+                if(chunk > 0) {
+                    return String.format(messages.getString("conflict_checksum_tree"), s, d, chunk / (1024 * 1024));
+                }
+                return String.format(messages.getString("conflict_checksum"), s, d);
+            default:
+                return "";
+        }
+    }
+
+    private int check(int i) {
+        if(i < 0 || i >= entries) {
+            throw new IndexOutOfBoundsException("Entry " + i + " of " + entries);
+        }
+        return i;
+    }
+
+    private int addPair(Path source, Path destination) {
+        if(pairs == pairSource.length) {
+            int capacity = grow(pairs);
+            pairSource = Arrays.copyOf(pairSource, capacity);
+            pairDestination = Arrays.copyOf(pairDestination, capacity);
+        }
+        pairSource[pairs] = node(source);
+        pairDestination[pairs] = node(destination);
+        return pairs++;
+    }
+
+    private void addEntry(int pair, int name, byte kind, boolean directory, VerificationTier tier, Conflict c) {
+        if(entries == entryPair.length) {
+            int capacity = grow(entries);
+            entryPair = Arrays.copyOf(entryPair, capacity);
+            entryName = Arrays.copyOf(entryName, capacity);
+            entryCode = Arrays.copyOf(entryCode, capacity);
+            entryTier = Arrays.copyOf(entryTier, capacity);
+            entryDetail = Arrays.copyOf(entryDetail, capacity);
+        }
+        byte conflict = CONFLICT_NONE;
+        int detail = -1;
+        if(c != null) {
+            detail = details;
+            if(c instanceof TypeConflict) {
+                conflict = ((TypeConflict) c).isFile() ? CONFLICT_TYPE_FILE : CONFLICT_TYPE_DIRECTORY;
+                addDetail(0L, 0L, -1);
+            } else if(c instanceof SizeConflict) {
+                conflict = CONFLICT_SIZE;
+                addDetail(((SizeConflict) c).sourceSize(), ((SizeConflict) c).destinationSize(), -1);
+            } else if(c instanceof ContentConflict) {
+                conflict = CONFLICT_CONTENT;
+                addDetail(((ContentConflict) c).offset(), 0L, -1);
+            } else if(c instanceof ChecksumConflict) {
+                ChecksumConflict cc = (ChecksumConflict) c;
+                conflict = CONFLICT_CHECKSUM;
+                addDetail(0L, cc.treeChunkSize(), addDigests(CheckCopy.hexToDigest(cc.sourceChecksum()), CheckCopy.hexToDigest(cc.destinationChecksum())));
+            } else {
+                detail = -1;
+            }
+        }
+        entryPair[entries] = pair;
+        entryName[entries] = name;
+        entryCode[entries] = (byte) (kind | (conflict << CONFLICT_SHIFT) | (directory ? DIRECTORY_FLAG : 0));
+        entryTier[entries] = (byte) tier.ordinal();
+        entryDetail[entries] = detail;
+        entries++;
+    }
+
+    private void addDetail(long a, long b, int digest) {
+        if(details == detailA.length) {
+            int capacity = grow(details);
+            detailA = Arrays.copyOf(detailA, capacity);
+            detailB = Arrays.copyOf(detailB, capacity);
+            detailDigest = Arrays.copyOf(detailDigest, capacity);
+        }
+        detailA[details] = a;
+        detailB[details] = b;
+        detailDigest[details] = digest;
+        details++;
+    }
+
+    // [length][source digest][destination digest]
+    private int addDigests(byte [] source, byte [] destination) {
+        int length = Math.max(source.length, destination.length);
+        int needed = 1 + 2 * length;
+        if(digestPoolSize + needed > digestPool.length) {
+            digestPool = Arrays.copyOf(digestPool, Math.max(grow(digestPool.length), digestPoolSize + needed));
+        }
+        int offset = digestPoolSize;
+        digestPool[offset] = (byte) length;
+        System.arraycopy(source, 0, digestPool, offset + 1, source.length);
+        System.arraycopy(destination, 0, digestPool, offset + 1 + length, destination.length);
+        digestPoolSize += needed;
+        return offset;
+    }
+
+    private byte [] digest(int i, int side) {
+        if(conflict(i) != CONFLICT_CHECKSUM) {
+            return null;
+        }
+        int offset = detailDigest[entryDetail[i]];
+        int length = digestPool[offset] & 0xFF;
+        return Arrays.copyOfRange(digestPool, offset + 1 + side * length, offset + 1 + (side + 1) * length);
+    }
+
+    private int name(Map<String, Integer> names, File f) {
+        String name = f.getName();
+        Integer offset = names.get(name);
+        if(offset == null) {
+            offset = addName(name);
+            names.put(name, offset);
+        }
+        return offset;
+    }
+
+    // varint length followed by the UTF-8 bytes
+    private int addName(String name) {
+        byte [] b = name.getBytes(StandardCharsets.UTF_8);
+        int needed = 5 + b.length;
+        if((long) namePoolSize + needed > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Result store name pool is full");
+        }
+        if(namePoolSize + needed > namePool.length) {
+            namePool = Arrays.copyOf(namePool, Math.max(grow(namePool.length), namePoolSize + needed));
+        }
+        int offset = namePoolSize;
+        int length = b.length;
+        while(length >= 0x80) {
+            namePool[namePoolSize++] = (byte) (length | 0x80);
+            length >>>= 7;
+        }
+        namePool[namePoolSize++] = (byte) length;
+        System.arraycopy(b, 0, namePool, namePoolSize, b.length);
+        namePoolSize += b.length;
+        return offset;
+    }
+
+    private int node(Path p) {
+        int node = -1;
+        Path root = p.getRoot();
+        if(root != null) {
+            node = child(node, root.toString());
+        }
+        for(Path segment : p) {
+            node = child(node, segment.toString());
+        }
+        return node;
+    }
+
+    private int child(int parent, String segment) {
+        Integer s = segmentIndex.get(segment);
+        if(s == null) {
+            s = segments.size();
+            segments.add(segment);
+            segmentIndex.put(segment, s);
+        }
+        long key = ((long) parent << 32) | (s & 0xFFFFFFFFL);
+        Integer node = nodeIndex.get(key);
+        if(node == null) {
+            if(nodes == nodeParent.length) {
+                int capacity = grow(nodes);
+                nodeParent = Arrays.copyOf(nodeParent, capacity);
+                nodeSegment = Arrays.copyOf(nodeSegment, capacity);
+            }
+            nodeParent[nodes] = parent;
+            nodeSegment[nodes] = s;
+            node = nodes++;
+            nodeIndex.put(key, node);
+        }
+        return node;
+    }
+
+    private String path(int node) {
+        if(node < 0) {
+            return "";
+        }
+        Deque<String> parts = new ArrayDeque<>();
+        for(int n = node; n >= 0; n = nodeParent[n]) {
+            parts.push(segments.get(nodeSegment[n]));
+        }
+        StringBuilder sb = new StringBuilder();
+        for(String part : parts) {
+            if(sb.length() > 0 && sb.charAt(sb.length() - 1) != File.separatorChar) {
+                sb.append(File.separatorChar);
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    private static int grow(int capacity) {
+        return capacity + (capacity >> 1) + 16;
+    }
+}
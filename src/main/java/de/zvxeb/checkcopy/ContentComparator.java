@@ -0,0 +1,106 @@
+package de.zvxeb.checkcopy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// reads source and destination block by block and stops at the first difference
+public class ContentComparator {
+    public static final long EQUAL = -1L;
+    public static final long CANCELLED = -2L;
+
+    private final int bufferSize;
+
+    private final ThreadLocal<ByteBuffer []> buffers;
+
+    public ContentComparator(int bufferSize) {
+        if(bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        // whole longs per block keep the comparison on 8 byte steps
+        this.bufferSize = (bufferSize + 7) & ~7;
+        this.buffers = ThreadLocal.withInitial(() -> new ByteBuffer [] {
+            ByteBuffer.allocateDirect(this.bufferSize),
+            ByteBuffer.allocateDirect(this.bufferSize)
+        });
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public long firstDifference(CancellationCheck cc, Path source, Path destination) throws IOException {
+        return firstDifference(cc, null, source, destination);
+    }
+
+    public long firstDifference(CancellationCheck cc, IoGovernor governor, Path source, Path destination) throws IOException {
+        IoGovernor.Budget budgetS = governor != null ? governor.budget(true) : null;
+        IoGovernor.Budget budgetD = governor != null ? governor.budget(false) : null;
+        if(governor != null) {
+            budgetS.op(cc);
+            budgetD.op(cc);
+        }
+        ByteBuffer [] bb = buffers.get();
+        ByteBuffer bs = bb[0];
+        ByteBuffer bd = bb[1];
+        try(
+            FileChannel fcs = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel fcd = FileChannel.open(destination, StandardOpenOption.READ)
+        ) {
+            long position = 0;
+            while(true) {
+                if(cc.cancelled()) {
+                    return CANCELLED;
+                }
+                int rs = fill(fcs, bs);
+                int rd = fill(fcd, bd);
+                if(governor != null) {
+                    budgetS.read(cc, rs);
+                    budgetD.read(cc, rd);
+                }
+
+                int n = Math.min(rs, rd);
+                int i = mismatch(bs, bd, n);
+                if(i >= 0) {
+                    return position + i;
+                }
+                if(rs != rd) {
+                    // one side ended early
+                    return position + n;
+                }
+                if(n < bufferSize) {
+                    return EQUAL;
+                }
+                position += n;
+            }
+        }
+    }
+
+    private static int fill(FileChannel fc, ByteBuffer b) throws IOException {
+        b.clear();
+        while(b.hasRemaining()) {
+            if(fc.read(b) < 0) {
+                break;
+            }
+        }
+        b.flip();
+        return b.limit();
+    }
+
+    private static int mismatch(ByteBuffer a, ByteBuffer b, int length) {
+        int i = 0;
+        for(; i + 8 <= length; i += 8) {
+            if(a.getLong(i) != b.getLong(i)) {
+                break;
+            }
+        }
+        for(; i < length; i++) {
+            if(a.get(i) != b.get(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,57 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.Conflict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+// RFC 4180 style rows: kind, source, destination, name, directory, tier, conflict, message;
+// the tier is the one the entry was reported at
+public class CsvResultWriter extends ResultWriter {
+    private boolean header = false;
+
+    public CsvResultWriter(Writer out, boolean closeWriter) {
+        super(out, closeWriter);
+    }
+
+    @Override
+    protected void write(CheckResult cr) throws IOException {
+        if(!header) {
+            out.write("kind,source,destination,name,directory,tier,conflict,message\r\n");
+            header = true;
+        }
+        for(File f : cr.notInDestination()) {
+            row(cr, NOT_IN_DESTINATION, f, null);
+        }
+        for(File f : cr.notInSource()) {
+            row(cr, NOT_IN_SOURCE, f, null);
+        }
+        for(File f : cr.conflicts()) {
+            row(cr, CONFLICT, f, cr.conflictDetails().get(f));
+        }
+    }
+
+    private void row(CheckResult cr, String kind, File f, Conflict c) throws IOException {
+        out.write(kind);
+        cell(cr.sourcePath().toString());
+        cell(cr.destinationPath().toString());
+        cell(f.getName());
+        cell(f.isDirectory() ? "true" : "false");
+        cell(cr.tier(f).name());
+        cell(c != null ? conflictType(c) : "");
+        cell(c != null ? c.getMessage() : "");
+        out.write("\r\n");
+    }
+
+    private void cell(String value) throws IOException {
+        out.write(',');
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,34 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.hash.Hasher;
+
+// per thread digest arrays for pairs that are compared once and then forgotten;
+// a scratch digest is only valid until the same thread computes the next one
+final class DigestScratch {
+    private static final ThreadLocal<DigestScratch> scratch = ThreadLocal.withInitial(DigestScratch::new);
+
+    private byte [] source = new byte [0];
+    private byte [] destination = new byte [0];
+
+    private DigestScratch() {
+    }
+
+    // null if the hasher cannot tell its digest length in advance
+    static byte [] get(boolean source, Hasher hasher) {
+        int length = hasher.digestLength();
+        if(length <= 0) {
+            return null;
+        }
+        DigestScratch ds = scratch.get();
+        if(source) {
+            if(ds.source.length != length) {
+                ds.source = new byte [length];
+            }
+            return ds.source;
+        }
+        if(ds.destination.length != length) {
+            ds.destination = new byte [length];
+        }
+        return ds.destination;
+    }
+}
@@ -0,0 +1,141 @@
+package de.zvxeb.checkcopy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+// one directory entry with the attributes from a single read; the attributes are
+// cached so the comparison never has to ask the file system again
+class FileEntry {
+    private static Logger log = LoggerFactory.getLogger(FileEntry.class);
+
+    private final Path path;
+    private final String name;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+    private final Object fileKey;
+
+    private File file;
+
+    FileEntry(Path path, BasicFileAttributes attributes) {
+        this.path = path;
+        this.name = path.getFileName().toString();
+        if(attributes != null) {
+            this.directory = attributes.isDirectory();
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+        } else {
+            this.directory = false;
+            this.size = 0L;
+            this.lastModified = 0L;
+            this.fileKey = null;
+        }
+    }
+
+    static List<FileEntry> list(Path directory) throws IOException {
+        return list(directory, null);
+    }
+
+    static List<FileEntry> list(Path directory, CheckMetrics metrics) throws IOException {
+        return list(directory, metrics, null, null);
+    }
+
+    // the listing and every attribute read count as one operation of the budget
+    static List<FileEntry> list(Path directory, CheckControl config, boolean source) throws IOException {
+        return list(directory, config.metrics(), config, config.ioBudget(source));
+    }
+
+    // with metrics the directory read and the attribute reads are timed separately
+    static List<FileEntry> list(Path directory, CheckMetrics metrics, CancellationCheck cc, IoGovernor.Budget budget) throws IOException {
+        if(budget != null) {
+            budget.op(cc);
+        }
+        List<FileEntry> entries = new ArrayList<>();
+        if(metrics == null) {
+            try(DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+                for(Path p : ds) {
+                    if(budget != null) {
+                        budget.op(cc);
+                    }
+                    entries.add(new FileEntry(p, readAttributes(p)));
+                }
+            } catch (DirectoryIteratorException e) {
+                // the iterator can only throw unchecked, callers report unreadable directories
+                throw e.getCause();
+            }
+            return entries;
+        }
+
+        List<Path> paths = new ArrayList<>();
+        long start = System.nanoTime();
+        try(DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+            for(Path p : ds) {
+                paths.add(p);
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        long listed = System.nanoTime();
+        metrics.record(CheckMetrics.Phase.LISTING, listed - start);
+        for(Path p : paths) {
+            if(budget != null) {
+                budget.op(cc);
+            }
+            entries.add(new FileEntry(p, readAttributes(p)));
+        }
+        metrics.record(CheckMetrics.Phase.ATTRIBUTES, System.nanoTime() - listed);
+        return entries;
+    }
+
+    static BasicFileAttributes readAttributes(Path p) {
+        try {
+            return Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // broken links and the like - same as File.isDirectory() / File.length()
+            log.debug("Unable to read attributes of {}", p, e);
+            return null;
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public File file() {
+        if(file == null) {
+            file = path.toFile();
+        }
+        return file;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long lastModified() {
+        return lastModified;
+    }
+
+    public Object fileKey() {
+        return fileKey;
+    }
+}
@@ -0,0 +1,107 @@
+package de.zvxeb.checkcopy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// hashing in inode order instead of listing order; on ext4 and XFS inode numbers
+// follow the allocation groups, so spinning disks seek far less. The inode comes
+// from BasicFileAttributes.fileKey(), file systems without one keep the listing order
+final class FileOrder {
+    static final long UNKNOWN = -1L;
+
+    private FileOrder() {
+    }
+
+    // (dev=<hex>,ino=<decimal>) on Unix
+    static long device(FileEntry e) {
+        Object key = e.fileKey();
+        if(key == null) {
+            return UNKNOWN;
+        }
+        String s = key.toString();
+        int dev = s.indexOf("dev=");
+        int ino = s.indexOf(",ino=");
+        if(dev < 0 || ino < dev) {
+            return UNKNOWN;
+        }
+        try {
+            return Long.parseUnsignedLong(s.substring(dev + 4, ino), 16);
+        } catch (NumberFormatException ex) {
+            return UNKNOWN;
+        }
+    }
+
+    static long inode(FileEntry e) {
+        Object key = e.fileKey();
+        if(key == null) {
+            return UNKNOWN;
+        }
+        String s = key.toString();
+        int ino = s.indexOf(",ino=");
+        int end = s.indexOf(')', ino);
+        if(ino < 0 || end < 0) {
+            return UNKNOWN;
+        }
+        try {
+            return Long.parseLong(s.substring(ino + 5, end));
+        } catch (NumberFormatException ex) {
+            return UNKNOWN;
+        }
+    }
+
+    // the listing to compare in, only differs if the pairs are going to be read
+    static List<FileEntry> of(CheckControl config, List<FileEntry> listing) {
+        if(!config.physicalOrder() || !(config.checksum() || config.compareContent())) {
+            return listing;
+        }
+        return physical(listing);
+    }
+
+    // files are sorted by inode, directories keep their place so the traversal order stays the same
+    static List<FileEntry> physical(List<FileEntry> listing) {
+        List<Keyed> files = new ArrayList<>();
+        for(FileEntry e : listing) {
+            if(!e.isDirectory()) {
+                long inode = inode(e);
+                if(inode == UNKNOWN) {
+                    return listing;
+                }
+                files.add(new Keyed(e, device(e), inode));
+            }
+        }
+        if(files.size() < 2) {
+            return listing;
+        }
+        Keyed [] sorted = files.toArray(new Keyed [0]);
+        Arrays.sort(sorted, ORDER);
+        List<FileEntry> ordered = new ArrayList<>(listing.size());
+        int next = 0;
+        for(FileEntry e : listing) {
+            ordered.add(e.isDirectory() ? e : sorted[next++].entry);
+        }
+        return ordered;
+    }
+
+    static final class Keyed {
+        final FileEntry entry;
+        final long device;
+        final long inode;
+
+        Keyed(FileEntry entry, long device, long inode) {
+            this.entry = entry;
+            this.device = device;
+            this.inode = inode;
+        }
+
+        Keyed(FileEntry entry) {
+            this(entry, device(entry), inode(entry));
+        }
+    }
+
+    static final Comparator<Keyed> ORDER = (a, b) -> {
+        int c = Long.compareUnsigned(a.device, b.device);
+        return c != 0 ? c : Long.compare(a.inode, b.inode);
+    };
+}
@@ -0,0 +1,96 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.exception.CheckCancelledException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.atomic.AtomicReference;
+
+// every directory pair is a task on the traversal pool; sub-directories are forked
+// onto the work-stealing queues so the tree depth never ends up on the worker stacks
+class ForkJoinTraversal {
+    private static Logger log = LoggerFactory.getLogger(ForkJoinTraversal.class);
+
+    private final CheckControl config;
+    private final CheckMeta meta;
+
+    private final Queue<CheckResult> results = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private ForkJoinTraversal(CheckControl config, CheckMeta meta) {
+        this.config = config;
+        this.meta = meta;
+    }
+
+    static List<CheckResult> checkCopy(CheckControl config, CheckMeta meta, Path source, Path destination) throws IOException {
+        ForkJoinTraversal traversal = new ForkJoinTraversal(config, meta);
+        config.traversalPool().invoke(traversal.new DirectoryTask(null, source, destination));
+
+        Throwable t = traversal.failure.get();
+        if(t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if(t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if(t instanceof Error) {
+            throw (Error) t;
+        }
+
+        // workers finish in any order; sort for a stable report
+        List<CheckResult> result = new LinkedList<>(traversal.results);
+        result.sort(Comparator.comparing(CheckResult::sourcePath));
+        return result;
+    }
+
+    private boolean stopped() {
+        return failure.get() != null || config.cancelled();
+    }
+
+    private class DirectoryTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path source;
+        private final Path destination;
+
+        DirectoryTask(DirectoryTask parent, Path source, Path destination) {
+            super(parent);
+            this.source = source;
+            this.destination = destination;
+        }
+
+        @Override
+        public void compute() {
+            if(!stopped()) {
+                List<Path> subdirectories = new ArrayList<>();
+                try {
+                    CheckResult cr = CheckCopy.checkDirectory(config, meta, source, destination, subdirectories);
+                    CheckCopy.report(config, results, cr);
+                } catch (IOException | RuntimeException | Error e) {
+                    if(!(e instanceof CheckCancelledException)) {
+                        log.debug("Traversal failed in {}", source, e);
+                    }
+                    failure.compareAndSet(null, e);
+                    subdirectories.clear();
+                }
+
+                if(!stopped()) {
+                    setPendingCount(subdirectories.size());
+                    for(Path name : subdirectories) {
+                        new DirectoryTask(this, source.resolve(name), destination.resolve(name)).fork();
+                    }
+                }
+            }
+            tryComplete();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package de.zvxeb.checkcopy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// token buckets for read bandwidth and I/O operations, separately for source and
+// destination; every read, file open, directory listing and attribute read is
+// charged to its side. The limits may be changed while a check runs, 0 = unlimited
+public class IoGovernor {
+    // a changed limit is picked up by waiting readers within this time
+    private static final long MAX_SLEEP = TimeUnit.MILLISECONDS.toNanos(100);
+
+    static final class TokenBucket {
+        private long rate;
+        // fractions matter at low operation rates
+        private double available;
+        private long last = System.nanoTime();
+
+        synchronized long rate() {
+            return rate;
+        }
+
+        // at most one second of tokens is saved up
+        synchronized void rate(long rate) {
+            refill(System.nanoTime());
+            this.rate = Math.max(rate, 0L);
+            available = Math.min(available, this.rate);
+        }
+
+        // reads are charged after they happened, so the bucket may go into debt
+        void take(CancellationCheck cc, long tokens) {
+            synchronized(this) {
+                if(rate == 0) {
+                    return;
+                }
+                refill(System.nanoTime());
+                available -= tokens;
+            }
+            while(cc == null || !cc.cancelled()) {
+                long wait;
+                synchronized(this) {
+                    if(rate == 0) {
+                        available = 0;
+                        return;
+                    }
+                    refill(System.nanoTime());
+                    if(available >= 0) {
+                        return;
+                    }
+                    wait = Math.min(MAX_SLEEP, (long) (-available * 1e9 / rate) + 1);
+                }
+                LockSupport.parkNanos(this, wait);
+                if(Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+        }
+
+        private void refill(long now) {
+            if(rate > 0) {
+                available = Math.min(rate, available + (now - last) / 1e9 * rate);
+            }
+            last = now;
+        }
+    }
+
+    // the budget of one side
+    public static final class Budget {
+        private final TokenBucket bytes = new TokenBucket();
+        private final TokenBucket ops = new TokenBucket();
+
+        public long bytesPerSecond() {
+            return bytes.rate();
+        }
+
+        public long opsPerSecond() {
+            return ops.rate();
+        }
+
+        void read(CancellationCheck cc, long n) {
+            if(n > 0) {
+                bytes.take(cc, n);
+            }
+        }
+
+        void op(CancellationCheck cc) {
+            ops.take(cc, 1L);
+        }
+
+        void ops(CancellationCheck cc, long n) {
+            if(n > 0) {
+                ops.take(cc, n);
+            }
+        }
+    }
+
+    private final Budget source = new Budget();
+    private final Budget destination = new Budget();
+
+    public Budget budget(boolean source) {
+        return source ? this.source : destination;
+    }
+
+    public IoGovernor bytesPerSecond(boolean source, long bytesPerSecond) {
+        budget(source).bytes.rate(bytesPerSecond);
+        return this;
+    }
+
+    public IoGovernor opsPerSecond(boolean source, long opsPerSecond) {
+        budget(source).ops.rate(opsPerSecond);
+        return this;
+    }
+
+    public long bytesPerSecond(boolean source) {
+        return budget(source).bytesPerSecond();
+    }
+
+    public long opsPerSecond(boolean source) {
+        return budget(source).opsPerSecond();
+    }
+}
@@ -0,0 +1,224 @@
+package de.zvxeb.checkcopy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
+// maps the checked trees to the block devices below them and limits the concurrent
+// reads per device: a spinning disk reads one file at a time, so source and destination
+// on the same disk are not hashed in parallel, while solid state devices get more
+// readers than the fixed two threads
+//
+// a tree is mapped by its root, file systems mounted below a root are not detected
+public class IoScheduler {
+    private static Logger log = LoggerFactory.getLogger(IoScheduler.class);
+
+    public static final int ROTATIONAL_READS = 1;
+    public static final int SOLID_STATE_READS = 4;
+    public static final int NVME_READS = 16;
+    // unknown devices and network shares keep the former two readers
+    public static final int DEFAULT_READS = 2;
+
+    private static final Path SYS_BLOCK = Paths.get("/sys/block");
+    private static final Path SYS_CLASS_BLOCK = Paths.get("/sys/class/block");
+
+    public enum Kind {
+        ROTATIONAL,
+        SOLID_STATE,
+        NVME,
+        UNKNOWN
+    }
+
+    public static class Device {
+        private final String name;
+        private final Kind kind;
+        private final int reads;
+        private final Semaphore permits;
+
+        Device(String name, Kind kind, int reads) {
+            this.name = name;
+            this.kind = kind;
+            this.reads = reads;
+            this.permits = new Semaphore(reads, true);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        public int reads() {
+            return reads;
+        }
+
+        void acquire() throws InterruptedException {
+            permits.acquire();
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + kind + ", " + reads + ")";
+        }
+    }
+
+    private static class Root {
+        final Path path;
+        final Device device;
+
+        Root(Path path, Device device) {
+            this.path = path;
+            this.device = device;
+        }
+    }
+
+    private final Map<String, Integer> overrides;
+    private final Map<String, Device> devices = new ConcurrentHashMap<>();
+    private final List<Root> roots = new CopyOnWriteArrayList<>();
+    private final Device unknown;
+
+    public IoScheduler() {
+        this(Collections.emptyMap());
+    }
+
+    // overrides are concurrent reads by device name, e.g. sda or nvme0n1
+    public IoScheduler(Map<String, Integer> overrides) {
+        this.overrides = new HashMap<>(overrides);
+        this.unknown = device("", Kind.UNKNOWN);
+    }
+
+    // "name=reads" pairs, null if one of them is malformed
+    public static Map<String, Integer> parseOverrides(Collection<String> specs) {
+        Map<String, Integer> overrides = new HashMap<>();
+        for(String spec : specs) {
+            int eq = spec.lastIndexOf('=');
+            if(eq <= 0) {
+                return null;
+            }
+            try {
+                int reads = Integer.parseInt(spec.substring(eq + 1).trim());
+                if(reads <= 0) {
+                    return null;
+                }
+                overrides.put(spec.substring(0, eq).trim(), reads);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return overrides;
+    }
+
+    // idempotent, the traversals register their roots again
+    public synchronized Device register(Path root) {
+        for(Root r : roots) {
+            if(r.path.equals(root)) {
+                return r.device;
+            }
+        }
+        Device device;
+        try {
+            device = probe(root);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to map {} to a device", root, e);
+            device = unknown;
+        }
+        roots.add(new Root(root, device));
+        // the most specific root wins
+        roots.sort((a, b) -> b.path.getNameCount() - a.path.getNameCount());
+        log.debug("{} is on {}", root, device);
+        return device;
+    }
+
+    public Collection<Device> devices() {
+        Set<Device> used = new LinkedHashSet<>();
+        for(Root r : roots) {
+            used.add(r.device);
+        }
+        return used;
+    }
+
+    // readers needed to keep every device busy
+    public int threads() {
+        int threads = 0;
+        for(Device d : devices()) {
+            threads += d.reads();
+        }
+        return threads;
+    }
+
+    public Device device(Path file) {
+        for(Root r : roots) {
+            if(file.startsWith(r.path)) {
+                return r.device;
+            }
+        }
+        return unknown;
+    }
+
+    // reads of a and b may only run at the same time if they do not compete for one head
+    public boolean overlap(Path a, Path b) {
+        Device da = device(a);
+        return da != device(b) || da.reads() > 1;
+    }
+
+    private Device device(String name, Kind kind) {
+        return devices.computeIfAbsent(name, n -> {
+            Integer reads = overrides.get(n);
+            return new Device(n.isEmpty() ? "?" : n, kind, reads != null ? reads : defaultReads(kind));
+        });
+    }
+
+    private static int defaultReads(Kind kind) {
+        switch(kind) {
+            case ROTATIONAL:
+                return ROTATIONAL_READS;
+            case SOLID_STATE:
+                return SOLID_STATE_READS;
+            case NVME:
+                return NVME_READS;
+            default:
+                return DEFAULT_READS;
+        }
+    }
+
+    private Device probe(Path root) throws IOException {
+        FileStore store = Files.getFileStore(root);
+        String name = store.name();
+        if(!name.startsWith("/dev/") || !Files.isDirectory(SYS_BLOCK)) {
+            // network shares, tmpfs and platforms without sysfs
+            return device(name, Kind.UNKNOWN);
+        }
+        // /dev/mapper/* and /dev/disk/by-* are links to the kernel name
+        String block = Paths.get(name).toRealPath().getFileName().toString();
+        Path sys = SYS_CLASS_BLOCK.resolve(block);
+        if(Files.exists(sys.resolve("partition"))) {
+            // partitions of one disk share its head
+            block = sys.toRealPath().getParent().getFileName().toString();
+        }
+        Path rotational = SYS_BLOCK.resolve(block).resolve("queue").resolve("rotational");
+        if(!Files.isReadable(rotational)) {
+            return device(block, Kind.UNKNOWN);
+        }
+        String flag = new String(Files.readAllBytes(rotational), StandardCharsets.US_ASCII).trim();
+        if("1".equals(flag)) {
+            return device(block, Kind.ROTATIONAL);
+        }
+        return device(block, block.startsWith("nvme") ? Kind.NVME : Kind.SOLID_STATE);
+    }
+}
@@ -0,0 +1,227 @@
+package de.zvxeb.checkcopy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// per directory pair the listing fingerprints of the last successful verification;
+// a directory whose listings are unchanged on both sides is not compared again
+//
+// the fingerprint covers name, type, size and modification time of every entry,
+// because a directory's own mtime does not change when a file in it is rewritten -
+// directories are still listed, but neither compared nor hashed
+public class Journal {
+    private static Logger log = LoggerFactory.getLogger(Journal.class);
+
+    private static final int MAGIC = 0x43434a31; // "CCJ1"
+
+    private final Path file;
+
+    private final Map<String, Fingerprints> entries = new ConcurrentHashMap<>();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+    private String mode = "";
+    private volatile boolean modified = false;
+
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger verified = new AtomicInteger();
+
+    private static class Fingerprints {
+        final long source;
+        final long destination;
+
+        Fingerprints(long source, long destination) {
+            this.source = source;
+            this.destination = destination;
+        }
+    }
+
+    private static class Pending {
+        final CheckResult cr;
+        final String key;
+        final Fingerprints fingerprints;
+
+        Pending(CheckResult cr, String key, Fingerprints fingerprints) {
+            this.cr = cr;
+            this.key = key;
+            this.fingerprints = fingerprints;
+        }
+    }
+
+    public Journal(Path file) {
+        this.file = file;
+    }
+
+    public static Journal open(Path file) throws IOException {
+        Journal journal = new Journal(file);
+        if(Files.isRegularFile(file)) {
+            journal.load();
+        }
+        return journal;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int skipped() {
+        return skipped.get();
+    }
+
+    public int verified() {
+        return verified.get();
+    }
+
+    // a journal written with different checks says nothing about this run
+    synchronized void mode(String mode) {
+        if(!mode.equals(this.mode)) {
+            if(!entries.isEmpty()) {
+                log.info("Journal {} was written for '{}' - verifying everything for '{}'", file, this.mode, mode);
+            }
+            entries.clear();
+            this.mode = mode;
+            modified = true;
+        }
+        seen.clear();
+        pending.clear();
+        skipped.set(0);
+        verified.set(0);
+    }
+
+    static String mode(CheckControl config) {
+        StringBuilder sb = new StringBuilder(config.verificationTier().name());
+        if(config.checksum()) {
+            sb.append('/').append(config.checksumReader().cacheKey(config.checksumAlgorithm()));
+        }
+        return sb.toString();
+    }
+
+    static long fingerprint(List<FileEntry> listing) {
+        // order independent, directory streams make no promise about the order
+        long fp = listing.size();
+        for(FileEntry e : listing) {
+            long h = e.name().hashCode();
+            h = h * 31 + (e.isDirectory() ? 1 : e.size());
+            h = h * 31 + e.lastModified();
+            fp += mix(h);
+        }
+        return mix(fp);
+    }
+
+    private static long mix(long z) {
+        // splitmix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String key(Path source, Path destination) {
+        return source.toAbsolutePath().normalize() + "\0" + destination.toAbsolutePath().normalize();
+    }
+
+    boolean unchanged(Path source, Path destination, long sourceFingerprint, long destinationFingerprint) {
+        String key = key(source, destination);
+        seen.add(key);
+        Fingerprints f = entries.get(key);
+        if(f != null && f.source == sourceFingerprint && f.destination == destinationFingerprint) {
+            skipped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // results with queued checksums are recorded once the pipeline has drained
+    void record(CheckResult cr, Path source, Path destination, long sourceFingerprint, long destinationFingerprint) {
+        String key = key(source, destination);
+        Fingerprints f = new Fingerprints(sourceFingerprint, destinationFingerprint);
+        verified.incrementAndGet();
+        if(cr.deferred()) {
+            pending.add(new Pending(cr, key, f));
+        } else {
+            record(key, f, cr.ok());
+        }
+    }
+
+    void drain() {
+        Pending p;
+        while((p = pending.poll()) != null) {
+            record(p.key, p.fingerprints, p.cr.ok());
+        }
+    }
+
+    private void record(String key, Fingerprints f, boolean ok) {
+        if(ok) {
+            entries.put(key, f);
+        } else {
+            entries.remove(key);
+        }
+        modified = true;
+    }
+
+    private synchronized void load() throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC) {
+                log.warn("Ignoring journal {} - unknown format", file);
+                return;
+            }
+            mode = in.readUTF();
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long source = in.readLong();
+                long destination = in.readLong();
+                entries.put(key, new Fingerprints(source, destination));
+            }
+        } catch (EOFException e) {
+            log.warn("Journal {} is truncated - using {} entries", file, entries.size());
+        }
+        modified = false;
+        log.debug("Loaded {} journal entries from {}", entries.size(), file);
+    }
+
+    // directories that were not visited in a complete run no longer exist
+    public synchronized void save(boolean complete) throws IOException {
+        if(complete) {
+            modified |= entries.keySet().retainAll(seen);
+        }
+        if(!modified) {
+            return;
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if(parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(mode);
+                Map<String, Fingerprints> snapshot = new HashMap<>(entries);
+                out.writeInt(snapshot.size());
+                for(Map.Entry<String, Fingerprints> me : snapshot.entrySet()) {
+                    out.writeUTF(me.getKey());
+                    out.writeLong(me.getValue().source);
+                    out.writeLong(me.getValue().destination);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        modified = false;
+        log.debug("Saved {} journal entries to {}", entries.size(), file);
+    }
+}
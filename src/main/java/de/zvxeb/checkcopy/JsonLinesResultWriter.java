@@ -0,0 +1,91 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.conflict.Conflict;
+import de.zvxeb.checkcopy.conflict.ContentConflict;
+import de.zvxeb.checkcopy.conflict.SizeConflict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+// one JSON object per missing, unexpected or conflicting entry
+public class JsonLinesResultWriter extends ResultWriter {
+    public JsonLinesResultWriter(Writer out, boolean closeWriter) {
+        super(out, closeWriter);
+    }
+
+    @Override
+    protected void write(CheckResult cr) throws IOException {
+        for(File f : cr.notInDestination()) {
+            begin(cr, NOT_IN_DESTINATION, f);
+            out.write("}\n");
+        }
+        for(File f : cr.notInSource()) {
+            begin(cr, NOT_IN_SOURCE, f);
+            out.write("}\n");
+        }
+        for(File f : cr.conflicts()) {
+            Conflict c = cr.conflictDetails().get(f);
+            begin(cr, CONFLICT, f);
+            field("conflict", conflictType(c));
+            field("message", c.getMessage());
+            if(c instanceof SizeConflict) {
+                field("source_size", ((SizeConflict) c).sourceSize());
+                field("destination_size", ((SizeConflict) c).destinationSize());
+            } else if(c instanceof ChecksumConflict) {
+                ChecksumConflict cc = (ChecksumConflict) c;
+                field("source_checksum", cc.sourceChecksum());
+                field("destination_checksum", cc.destinationChecksum());
+                if(cc.isTreeDigest()) {
+                    field("tree_chunk_size", cc.treeChunkSize());
+                }
+            } else if(c instanceof ContentConflict) {
+                field("offset", ((ContentConflict) c).offset());
+            }
+            out.write("}\n");
+        }
+    }
+
+    private void begin(CheckResult cr, String kind, File f) throws IOException {
+        out.write("{\"kind\":\"");
+        out.write(kind);
+        out.write('"');
+        field("source", cr.sourcePath().toString());
+        field("destination", cr.destinationPath().toString());
+        field("name", f.getName());
+        out.write(",\"directory\":");
+        out.write(f.isDirectory() ? "true" : "false");
+        field("tier", cr.tier(f).name());
+    }
+
+    private void field(String name, long value) throws IOException {
+        out.write(",\"");
+        out.write(name);
+        out.write("\":");
+        out.write(Long.toString(value));
+    }
+
+    private void field(String name, String value) throws IOException {
+        out.write(",\"");
+        out.write(name);
+        out.write("\":\"");
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if(c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,725 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.conflict.SizeConflict;
+import de.zvxeb.checkcopy.conflict.TypeConflict;
+import de.zvxeb.checkcopy.exception.DirectoryReadException;
+import de.zvxeb.checkcopy.exception.NotADirectoryException;
+import de.zvxeb.checkcopy.hash.Hasher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+
+// snapshot of a source tree: relative path, size, mtime and digest of every entry
+//
+// layout (big endian):
+//   magic, digest kind (UTF), digest length (short), count (int), paths offset (long)
+//   count fixed size records: parent offset (long), parent length (int), name offset (long),
+//     name length (int), flags (byte), size (long), mtime (long), digest
+//   flags: directory, has digest - an all zero digest is a valid one
+//   UTF-8 path pool
+//
+// records are sorted by parent directory and then by name (both as unsigned UTF-8 bytes),
+// so all entries of a directory are adjacent and can be found by binary search in the mapped file;
+// a buffer maps at most 2 GiB, so the file is mapped in windows and values may span two of them
+public class Manifest implements AutoCloseable {
+    private static Logger log = LoggerFactory.getLogger(Manifest.class);
+
+    private static final int MAGIC = 0x43434d32; // "CCM2"
+    private static final byte FLAG_DIRECTORY = 1;
+    private static final byte FLAG_HAS_DIGEST = 2;
+
+    public static final long UNKNOWN_SIZE = -1L;
+
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+    private static final long WINDOW_MASK = WINDOW_SIZE - 1;
+
+    private final String digestKind;
+    private final int digestLength;
+    private final int count;
+    private final int recordSize;
+    private final long recordsOffset;
+    private final long pathsOffset;
+    private final MappedByteBuffer [] windows;
+
+    private Manifest(String digestKind, int digestLength, int count, long recordsOffset, long pathsOffset, MappedByteBuffer [] windows) {
+        this.digestKind = digestKind;
+        this.digestLength = digestLength;
+        this.count = count;
+        this.recordSize = recordSize(digestLength);
+        this.recordsOffset = recordsOffset;
+        this.pathsOffset = pathsOffset;
+        this.windows = windows;
+    }
+
+    public static Manifest open(Path file) throws IOException {
+        try(FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = fc.size();
+            MappedByteBuffer [] windows = new MappedByteBuffer [(int) Math.max(1L, (size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+            for(int w = 0; w < windows.length; w++) {
+                long start = (long) w << WINDOW_SHIFT;
+                windows[w] = fc.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+            }
+            // magic, kind length and kind, digest length, count, paths offset
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(size, 4 + 2 + 0xFFFF + 2 + 4 + 8));
+            while(header.hasRemaining()) {
+                if(fc.read(header, header.position()) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if(header.remaining() < 4 || header.getInt() != MAGIC) {
+                throw new IOException("Not a manifest: " + file);
+            }
+            byte [] kind = new byte [header.getShort() & 0xFFFF];
+            header.get(kind);
+            int digestLength = header.getShort() & 0xFFFF;
+            int count = header.getInt();
+            long pathsOffset = header.getLong();
+            long recordsOffset = header.position();
+            // the records have to fit in front of the paths, the paths into the file
+            long recordsEnd = recordsOffset + (long) count * recordSize(digestLength);
+            if(count < 0 || recordsEnd > pathsOffset || pathsOffset > size) {
+                throw new IOException("Corrupt manifest: " + file + " (" + count + " records, paths at " + pathsOffset + " of " + size + " bytes)");
+            }
+            Manifest manifest = new Manifest(new String(kind, StandardCharsets.UTF_8), digestLength, count, recordsOffset, pathsOffset, windows);
+            // names are pooled in record order, the last one ends the file
+            if(count > 0) {
+                long last = manifest.record(count - 1);
+                long nameOffset = manifest.getLong(last + 12);
+                int nameLength = manifest.getInt(last + 20);
+                if(nameOffset < 0 || nameLength < 0 || pathsOffset + nameOffset + nameLength > size) {
+                    throw new IOException("Corrupt manifest: " + file + " (paths run past the end at " + size + " bytes)");
+                }
+            }
+            return manifest;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated manifest: " + file, e);
+        }
+    }
+
+    // parent offset and length, name offset and length, flags, size, modification time, digest
+    private static int recordSize(int digestLength) {
+        return 8 + 4 + 8 + 4 + 1 + 8 + 8 + digestLength;
+    }
+
+    public String digestKind() {
+        return digestKind;
+    }
+
+    // algorithm name without sampling or tree suffixes
+    public String algorithm() {
+        int i = digestKind.indexOf('/');
+        return i < 0 ? digestKind : digestKind.substring(0, i);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String parent(int i) {
+        long r = record(i);
+        return string(getLong(r), getInt(r + 8));
+    }
+
+    public String name(int i) {
+        long r = record(i);
+        return string(getLong(r + 12), getInt(r + 20));
+    }
+
+    public String path(int i) {
+        String parent = parent(i);
+        return parent.isEmpty() ? name(i) : parent + "/" + name(i);
+    }
+
+    public boolean isDirectory(int i) {
+        return (get(record(i) + 24) & FLAG_DIRECTORY) != 0;
+    }
+
+    public long fileSize(int i) {
+        return getLong(record(i) + 25);
+    }
+
+    public long lastModified(int i) {
+        return getLong(record(i) + 33);
+    }
+
+    public byte [] digest(int i) {
+        byte [] d = new byte [digestLength];
+        get(record(i) + 41, d);
+        return d;
+    }
+
+    public boolean hasDigest(int i) {
+        return (get(record(i) + 24) & FLAG_HAS_DIGEST) != 0;
+    }
+
+    // index of the first entry of a directory or -1 if it has no entries
+    public int firstInDirectory(String parent) {
+        byte [] p = parent.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = count;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long r = record(mid);
+            if(compare(getLong(r), getInt(r + 8), p) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if(lo < count && inDirectory(lo, p)) {
+            return lo;
+        }
+        return -1;
+    }
+
+    public boolean inDirectory(int i, String parent) {
+        return inDirectory(i, parent.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean inDirectory(int i, byte [] parent) {
+        long r = record(i);
+        return compare(getLong(r), getInt(r + 8), parent) == 0;
+    }
+
+    private int compare(long offset, int length, byte [] b) {
+        long base = pathsOffset + offset;
+        int n = Math.min(length, b.length);
+        for(int k = 0; k < n; k++) {
+            int c = (get(base + k) & 0xFF) - (b[k] & 0xFF);
+            if(c != 0) {
+                return c;
+            }
+        }
+        return length - b.length;
+    }
+
+    private long record(int i) {
+        return recordsOffset + (long) i * recordSize;
+    }
+
+    private String string(long offset, int length) {
+        byte [] b = new byte [length];
+        get(pathsOffset + offset, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private byte get(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)].get((int) (position & WINDOW_MASK));
+    }
+
+    private int getInt(long position) {
+        MappedByteBuffer w = windows[(int) (position >>> WINDOW_SHIFT)];
+        int offset = (int) (position & WINDOW_MASK);
+        if(offset + 4 <= w.limit()) {
+            return w.getInt(offset);
+        }
+        return (int) getSpanning(position, 4);
+    }
+
+    private long getLong(long position) {
+        MappedByteBuffer w = windows[(int) (position >>> WINDOW_SHIFT)];
+        int offset = (int) (position & WINDOW_MASK);
+        if(offset + 8 <= w.limit()) {
+            return w.getLong(offset);
+        }
+        return getSpanning(position, 8);
+    }
+
+    // big endian value across the end of a window
+    private long getSpanning(long position, int bytes) {
+        long v = 0L;
+        for(int k = 0; k < bytes; k++) {
+            v = (v << 8) | (get(position + k) & 0xFF);
+        }
+        return v;
+    }
+
+    private void get(long position, byte [] b) {
+        int done = 0;
+        while(done < b.length) {
+            ByteBuffer w = windows[(int) ((position + done) >>> WINDOW_SHIFT)].duplicate();
+            w.position((int) ((position + done) & WINDOW_MASK));
+            int n = Math.min(b.length - done, w.remaining());
+            w.get(b, done, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released with the buffer
+    }
+
+    // ---- writing
+
+    static class Entry {
+        final byte [] parent;
+        final byte [] name;
+        final boolean directory;
+        final long size;
+        final long lastModified;
+        final byte [] digest;
+
+        Entry(String parent, String name, boolean directory, long size, long lastModified, byte [] digest) {
+            this.parent = parent.getBytes(StandardCharsets.UTF_8);
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    private static final Comparator<byte []> UNSIGNED = (a, b) -> {
+        int n = Math.min(a.length, b.length);
+        for(int k = 0; k < n; k++) {
+            int c = (a[k] & 0xFF) - (b[k] & 0xFF);
+            if(c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    };
+
+    static void write(Path file, String digestKind, int digestLength, List<Entry> entries) throws IOException {
+        entries.sort((a, b) -> {
+            int c = UNSIGNED.compare(a.parent, b.parent);
+            return c != 0 ? c : UNSIGNED.compare(a.name, b.name);
+        });
+
+        Path parent = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                byte [] kind = digestKind.getBytes(StandardCharsets.UTF_8);
+                int recordSize = recordSize(digestLength);
+                long headerSize = 4 + 2 + kind.length + 2 + 4 + 8;
+
+                out.writeInt(MAGIC);
+                out.writeShort(kind.length);
+                out.write(kind);
+                out.writeShort(digestLength);
+                out.writeInt(entries.size());
+                out.writeLong(headerSize + (long) entries.size() * recordSize);
+
+                // parents repeat for every entry of a directory - store them once
+                Map<String, Long> parentOffsets = new HashMap<>();
+                long poolSize = 0;
+                long [] parentOffset = new long [entries.size()];
+                long [] nameOffset = new long [entries.size()];
+                List<byte []> pool = new ArrayList<>();
+                for(int i = 0; i < entries.size(); i++) {
+                    Entry e = entries.get(i);
+                    String key = new String(e.parent, StandardCharsets.UTF_8);
+                    Long po = parentOffsets.get(key);
+                    if(po == null) {
+                        po = poolSize;
+                        parentOffsets.put(key, po);
+                        pool.add(e.parent);
+                        poolSize += e.parent.length;
+                    }
+                    parentOffset[i] = po;
+                    nameOffset[i] = poolSize;
+                    pool.add(e.name);
+                    poolSize += e.name.length;
+                }
+
+                byte [] empty = new byte [digestLength];
+                for(int i = 0; i < entries.size(); i++) {
+                    Entry e = entries.get(i);
+                    out.writeLong(parentOffset[i]);
+                    out.writeInt(e.parent.length);
+                    out.writeLong(nameOffset[i]);
+                    out.writeInt(e.name.length);
+                    out.writeByte((e.directory ? FLAG_DIRECTORY : 0) | (e.digest != null ? FLAG_HAS_DIGEST : 0));
+                    out.writeLong(e.size);
+                    out.writeLong(e.lastModified);
+                    out.write(e.digest != null ? e.digest : empty);
+                }
+                for(byte [] b : pool) {
+                    out.write(b);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        log.debug("Wrote {} manifest entries to {}", entries.size(), file);
+    }
+
+    // hashes every file below source; the digests come from the configured hasher,
+    // reader and cache just like in checkCopy
+    public static int create(CheckControl config, CheckMeta meta, Path source, Path file) throws IOException {
+        if(!Files.isDirectory(source)) {
+            throw new NotADirectoryException(true, source.toString());
+        }
+        if(config.ioScheduler() != null) {
+            config.ioScheduler().register(source);
+        }
+        Hasher hasher = config.checksum() ? config.hasherS() : null;
+        List<Entry> entries = new ArrayList<>();
+        int [] digestLength = { 0 };
+
+        Deque<Path> pending = new ArrayDeque<>();
+        pending.push(Paths.get(""));
+        while(!pending.isEmpty()) {
+            Path relative = pending.pop();
+            Path dir = source.resolve(relative.toString());
+            List<FileEntry> listing;
+            try {
+                listing = FileEntry.list(dir, config, true);
+            } catch (IOException e) {
+                log.debug("Unable to list {}", dir, e);
+                throw new DirectoryReadException(true, dir.toString());
+            }
+            String parent = relativeName(relative);
+            if(meta != null) {
+                meta.addListed(true, CheckCopy.listedBytes(listing));
+            }
+            for(FileEntry fe : FileOrder.of(config, listing)) {
+                config.checkCancelled();
+                byte [] digest = null;
+                if(fe.isDirectory()) {
+                    pending.push(relative.resolve(fe.name()));
+                    if(meta != null) {
+                        meta.incDirectories();
+                    }
+                } else {
+                    if(hasher != null) {
+                        digest = CheckCopy.checksum(config, meta, true, hasher, fe);
+                        digestLength[0] = digest.length;
+                    }
+                    if(meta != null) {
+                        meta.incFiles(fe.size());
+                    }
+                }
+                entries.add(new Entry(parent, fe.name(), fe.isDirectory(), fe.isDirectory() ? 0 : fe.size(), fe.lastModified(), digest));
+            }
+        }
+
+        String kind = hasher != null ? config.checksumReader().cacheKey(hasher.algorithm()) : CheckCopy.NULL;
+        write(file, kind, digestLength[0], entries);
+        return entries.size();
+    }
+
+    // compares a destination against the manifest without touching the source
+    public List<CheckResult> verify(CheckControl config, CheckMeta meta, Path destination) throws IOException {
+        if(!Files.isDirectory(destination)) {
+            throw new NotADirectoryException(false, destination.toString());
+        }
+        if(config.ioScheduler() != null) {
+            config.ioScheduler().register(destination);
+        }
+        List<CheckResult> result = new LinkedList<>();
+        Deque<Path> pending = new ArrayDeque<>();
+        pending.push(Paths.get(""));
+
+        List<String> subdirectories = new ArrayList<>();
+        while(!pending.isEmpty()) {
+            Path relative = pending.pop();
+            subdirectories.clear();
+            CheckResult cr = verifyDirectory(config, meta, relative, destination, subdirectories);
+            CheckCopy.report(config, result, cr);
+            for(int i = subdirectories.size() - 1; i >= 0; i--) {
+                pending.push(relative.resolve(subdirectories.get(i)));
+            }
+        }
+        return result;
+    }
+
+    private CheckResult verifyDirectory(CheckControl config, CheckMeta meta, Path relative, Path destinationRoot, List<String> subdirectories) throws IOException {
+        config.checkCancelled();
+        String parent = relativeName(relative);
+        Path destination = destinationRoot.resolve(relative.toString());
+        Path source = Paths.get(parent);
+
+        List<FileEntry> destinationFiles;
+        try {
+            destinationFiles = FileEntry.list(destination, config, false);
+        } catch (IOException e) {
+            log.debug("Unable to list {}", destination, e);
+            throw new DirectoryReadException(false, destination.toString());
+        }
+        if(meta != null) {
+            meta.addListed(false, CheckCopy.listedBytes(destinationFiles));
+        }
+        Map<String, FileEntry> destinationIndex = CheckCopy.indexByName(destinationFiles);
+
+        CheckResult cr = new CheckResult(source, destination, config.verificationTier());
+        Set<String> sourceNames = new HashSet<>();
+        boolean failed = false;
+
+        int first = firstInDirectory(parent);
+        for(int i = first; i >= 0 && i < count && inDirectory(i, parent); i++) {
+            config.checkCancelled();
+            String name = name(i);
+            sourceNames.add(name);
+            if(failed && config.failFast()) {
+                continue;
+            }
+
+            boolean directory = isDirectory(i);
+            File fs = new RecordedFile(parent.isEmpty() ? name : parent + File.separator + name, directory);
+            FileEntry ed = destinationIndex.get(name);
+            boolean found = ed != null;
+            if(ed != null) {
+                File fd = ed.file();
+                if(directory != ed.isDirectory()) {
+                    TypeConflict tc = TypeConflict.causedBy(!directory);
+                    cr.addConflict(fs, tc, VerificationTier.EXISTENCE);
+                    if(config.eventListener()!=null) {
+                        config.eventListener().onConflict(config, source, destination, fs, fd, tc);
+                    }
+                    failed = true;
+                } else if(directory) {
+                    subdirectories.add(name);
+                } else if(config.checkSize() || config.checksum()) {
+                    long sl = fileSize(i);
+                    if(sl != UNKNOWN_SIZE && sl != ed.size()) {
+                        found = false;
+                        SizeConflict sc = SizeConflict.causedBy(sl, ed.size());
+                        cr.addConflict(fs, sc, VerificationTier.SIZE);
+                        if(config.eventListener()!=null) {
+                            config.eventListener().onConflict(config, source, destination, fs, fd, sc);
+                        }
+                    } else if(config.checksum() && hasDigest(i)) {
+                        byte [] scs = digest(i);
+                        byte [] dcs = CheckCopy.checksum(config, meta, false, config.hasherD(), ed, DigestScratch.get(false, config.hasherD()));
+                        if(!MessageDigest.isEqual(scs, dcs)) {
+                            found = false;
+                            ChecksumConflict cc = ChecksumConflict.causedBy(CheckCopy.digestToHex(scs), CheckCopy.digestToHex(dcs), config.checksumReader().treeChunkSize(ed.size()));
+                            cr.addConflict(fs, cc, config.checksumTier(ed.size()));
+                            if(config.eventListener()!=null) {
+                                config.eventListener().onConflict(config, source, destination, fs, fd, cc);
+                            }
+                        }
+                    }
+                }
+            }
+            if(meta != null) {
+                if(directory) {
+                    meta.incDirectories();
+                } else {
+                    meta.incFiles(ed != null ? ed.size() : 0L);
+                }
+            }
+            if(!found) {
+                cr.addNotInDestination(fs);
+                if(config.eventListener()!=null) {
+                    config.eventListener().onNotInDestination(config, source, destination, fs);
+                }
+                failed = true;
+            }
+        }
+
+        for(FileEntry ed : destinationFiles) {
+            if(!sourceNames.contains(ed.name())) {
+                cr.addNotInSource(ed.file());
+                if(config.eventListener()!=null) {
+                    config.eventListener().onNotInSource(config, source, destination, ed.file());
+                }
+                if(config.failFast() && config.failOnDestination()) {
+                    break;
+                }
+            }
+        }
+
+        if(config.failFast() && !cr.ok()) {
+            subdirectories.clear();
+        }
+        return cr;
+    }
+
+    private static String relativeName(Path relative) {
+        StringBuilder sb = new StringBuilder();
+        for(Path p : relative) {
+            if(p.toString().isEmpty()) {
+                continue;
+            }
+            if(sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(p);
+        }
+        return sb.toString();
+    }
+
+    // ---- md5sum / sha256sum style text files
+
+    public static String algorithmForDigestLength(int length) {
+        switch(length) {
+            case 16: return "MD5";
+            case 20: return "SHA-1";
+            case 32: return "SHA-256";
+            case 64: return "SHA-512";
+            default: return null;
+        }
+    }
+
+    // paths in the sum file are taken relative to its directory; size and mtime are
+    // unknown, so only the digest is verified for imported entries
+    public static int importSums(Path sums, Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Set<String> directories = new HashSet<>();
+        int digestLength = -1;
+        try(BufferedReader br = Files.newBufferedReader(sums, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while((line = br.readLine()) != null) {
+                lineNo++;
+                if(line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                // md5sum escapes names with a backslash or newline and marks the line with a leading backslash
+                boolean escaped = line.charAt(0) == '\\';
+                if(escaped) {
+                    line = line.substring(1);
+                }
+                int sep = line.indexOf(' ');
+                if(sep <= 0 || sep + 2 > line.length()) {
+                    throw new IOException("Invalid line " + lineNo + " in " + sums);
+                }
+                byte [] digest = CheckCopy.hexToDigest(line.substring(0, sep));
+                if(digest == null || (digestLength >= 0 && digest.length != digestLength)) {
+                    throw new IOException("Invalid digest in line " + lineNo + " of " + sums);
+                }
+                digestLength = digest.length;
+                // "hash  name" for text and "hash *name" for binary mode
+                String path = line.substring(sep + 2);
+                if(escaped) {
+                    path = unescape(path);
+                    if(path == null) {
+                        throw new IOException("Invalid escape in line " + lineNo + " of " + sums);
+                    }
+                }
+                while(path.startsWith("./")) {
+                    path = path.substring(2);
+                }
+                int slash = path.lastIndexOf('/');
+                String parent = slash < 0 ? "" : path.substring(0, slash);
+                String name = path.substring(slash + 1);
+                entries.add(new Entry(parent, name, false, UNKNOWN_SIZE, 0L, digest));
+
+                while(!parent.isEmpty() && directories.add(parent)) {
+                    int ps = parent.lastIndexOf('/');
+                    String pp = ps < 0 ? "" : parent.substring(0, ps);
+                    entries.add(new Entry(pp, parent.substring(ps + 1), true, 0L, 0L, null));
+                    parent = pp;
+                }
+            }
+        }
+        if(digestLength < 0) {
+            throw new IOException("No entries in " + sums);
+        }
+        String algorithm = algorithmForDigestLength(digestLength);
+        if(algorithm == null) {
+            throw new IOException("Unknown digest length " + digestLength + " in " + sums);
+        }
+        write(file, algorithm, digestLength, entries);
+        return entries.size();
+    }
+
+    // sampled and tree digests are not what md5sum and friends compute
+    public boolean exportable() {
+        return digestKind.equals(algorithm());
+    }
+
+    public int exportSums(Path sums) throws IOException {
+        if(!exportable()) {
+            throw new IOException("Digests of kind " + digestKind + " cannot be exported as plain sums");
+        }
+        int written = 0;
+        try(BufferedWriter bw = Files.newBufferedWriter(sums, StandardCharsets.UTF_8)) {
+            for(int i = 0; i < count; i++) {
+                if(isDirectory(i) || !hasDigest(i)) {
+                    continue;
+                }
+                String path = path(i);
+                String escaped = escape(path);
+                if(!escaped.equals(path)) {
+                    bw.write('\\');
+                }
+                bw.write(CheckCopy.digestToHex(digest(i)));
+                bw.write("  ");
+                bw.write(escaped);
+                bw.write('\n');
+                written++;
+            }
+        }
+        return written;
+    }
+
+    static String escape(String name) {
+        if(name.indexOf('\\') < 0 && name.indexOf('\n') < 0 && name.indexOf('\r') < 0) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(name.length() + 8);
+        for(int k = 0; k < name.length(); k++) {
+            char c = name.charAt(k);
+            switch(c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // null for an unknown or incomplete escape
+    static String unescape(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for(int k = 0; k < name.length(); k++) {
+            char c = name.charAt(k);
+            if(c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if(++k == name.length()) {
+                return null;
+            }
+            switch(name.charAt(k)) {
+                case '\\': sb.append('\\'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                default: return null;
+            }
+        }
+        return sb.toString();
+    }
+
+    // a recorded entry relative to the manifest root, it need not exist anywhere,
+    // so the type is the recorded one instead of a look at the file system
+    private static class RecordedFile extends File {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean directory;
+
+        RecordedFile(String pathname, boolean directory) {
+            super(pathname);
+            this.directory = directory;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public boolean isFile() {
+            return !directory;
+        }
+    }
+}
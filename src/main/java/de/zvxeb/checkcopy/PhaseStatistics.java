@@ -0,0 +1,65 @@
+package de.zvxeb.checkcopy;
+
+import java.beans.ConstructorProperties;
+
+// durations of one phase; percentiles are upper bounds of the histogram buckets
+public class PhaseStatistics {
+    private final String name;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long [] histogram;
+
+    @ConstructorProperties({"name", "count", "totalNanos", "maxNanos", "histogram"})
+    public PhaseStatistics(String name, long count, long totalNanos, long maxNanos, long [] histogram) {
+        this.name = name;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.histogram = histogram;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getMeanNanos() {
+        return count > 0 ? totalNanos / count : 0L;
+    }
+
+    public long getP50Nanos() {
+        return percentile(0.50);
+    }
+
+    public long getP99Nanos() {
+        return percentile(0.99);
+    }
+
+    public long [] getHistogram() {
+        return histogram.clone();
+    }
+
+    public long percentile(double p) {
+        long seen = 0;
+        long rank = (long) Math.ceil(p * count);
+        for(int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if(seen >= rank && seen > 0) {
+                return Math.min(i == 0 ? 0L : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+}
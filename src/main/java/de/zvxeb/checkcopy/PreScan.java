@@ -0,0 +1,133 @@
+package de.zvxeb.checkcopy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// counts the files and bytes of the trees while they are verified, so progress can be
+// given as a share of the whole; one low priority thread per tree, only attributes are
+// read and every directory and file counts as an operation of the side's budget
+public class PreScan {
+    private static Logger log = LoggerFactory.getLogger(PreScan.class);
+
+    private final CheckControl config;
+    private final boolean scansSource;
+
+    private final LongAdder filesSource = new LongAdder();
+    private final LongAdder filesDestination = new LongAdder();
+    private final LongAdder bytesSource = new LongAdder();
+    private final LongAdder bytesDestination = new LongAdder();
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile boolean stopped;
+
+    private PreScan(CheckControl config, boolean scansSource) {
+        this.config = config;
+        this.scansSource = scansSource;
+    }
+
+    // source may be null, e.g. when verifying a manifest; the destinations are added up
+    public static PreScan start(CheckControl config, Path source, List<Path> destinations) {
+        PreScan scan = new PreScan(config, source != null);
+        if(source != null) {
+            scan.scan(true, source);
+        }
+        for(Path d : destinations) {
+            scan.scan(false, d);
+        }
+        for(Thread t : scan.threads) {
+            t.start();
+        }
+        return scan;
+    }
+
+    public static PreScan start(CheckControl config, Path source, Path destination) {
+        return start(config, source, destination != null ? Collections.singletonList(destination) : Collections.emptyList());
+    }
+
+    private void scan(boolean source, Path root) {
+        running.incrementAndGet();
+        Thread t = new Thread(() -> {
+            try {
+                walk(source, root);
+            } catch (IOException e) {
+                log.debug("Pre-scan of {} failed", root, e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }, "checkcopy-scan-" + (threads.size() + 1));
+        t.setDaemon(true);
+        // the verification has precedence
+        t.setPriority(Thread.MIN_PRIORITY);
+        threads.add(t);
+    }
+
+    private void walk(boolean source, Path root) throws IOException {
+        IoGovernor.Budget budget = config.ioBudget(source);
+        LongAdder files = source ? filesSource : filesDestination;
+        LongAdder bytes = source ? bytesSource : bytesDestination;
+        // links are followed like the traversal does
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if(stopped || config.cancelled()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if(budget != null) {
+                    budget.op(config);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if(budget != null) {
+                    budget.op(config);
+                }
+                if(!attrs.isDirectory()) {
+                    files.increment();
+                    bytes.add(attrs.size());
+                }
+                return stopped ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            // unreadable entries are reported by the verification
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                log.debug("Pre-scan skips {}", file, exc);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean done() {
+        return running.get() == 0;
+    }
+
+    // the side progress is measured against
+    public boolean scansSource() {
+        return scansSource;
+    }
+
+    public long files(boolean source) {
+        return (source ? filesSource : filesDestination).sum();
+    }
+
+    public long bytes(boolean source) {
+        return (source ? bytesSource : bytesDestination).sum();
+    }
+}
@@ -0,0 +1,141 @@
+package de.zvxeb.checkcopy;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+// percent complete, throughput and remaining time of a running check; the rates are
+// taken over the last ten seconds, so a stretch of small files or a cached directory
+// does not distort them for the rest of the run. A file counts once its pair is done,
+// a single large file therefore advances the progress only when it is finished
+public class Progress {
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+    // one history entry per second is enough for the window
+    private static final long STEP = TimeUnit.SECONDS.toNanos(1);
+
+    private final CheckMeta meta;
+    private final PreScan scan;
+
+    // nanoTime, bytes checked, files
+    private final Deque<long []> history = new ArrayDeque<>();
+
+    // scan may be null, then neither percent nor remaining time are known
+    public Progress(CheckMeta meta, PreScan scan) {
+        this.meta = meta;
+        this.scan = scan;
+        // the first sample already has a rate
+        CheckMeta.Snapshot ms = meta.snapshot();
+        history.addLast(new long [] { ms.nanoTime(), ms.bytesChecked(), ms.files() });
+    }
+
+    public PreScan scan() {
+        return scan;
+    }
+
+    public synchronized Sample sample() {
+        CheckMeta.Snapshot ms = meta.snapshot();
+        long now = ms.nanoTime();
+        long [] current = { now, ms.bytesChecked(), ms.files() };
+        if(history.isEmpty() || now - history.peekLast()[0] >= STEP) {
+            history.addLast(current);
+        }
+        while(history.size() > 2 && now - history.peekFirst()[0] > WINDOW) {
+            history.removeFirst();
+        }
+        long [] oldest = history.peekFirst();
+        double seconds = (now - oldest[0]) / 1e9;
+        double bytesPerSecond = seconds > 0 ? (current[1] - oldest[1]) / seconds : 0.0;
+        double filesPerSecond = seconds > 0 ? (current[2] - oldest[2]) / seconds : 0.0;
+
+        boolean scanning = false;
+        long totalBytes = -1L;
+        long scannedFiles = 0L;
+        long scannedBytes = 0L;
+        if(scan != null) {
+            boolean side = scan.scansSource();
+            scannedFiles = scan.files(side);
+            scannedBytes = scan.bytes(side);
+            if(scan.done()) {
+                // files added during the run may push the checked bytes past the total
+                totalBytes = Math.max(scannedBytes, current[1]);
+            } else {
+                scanning = true;
+            }
+        }
+        return new Sample(current[2], current[1], scanning, totalBytes, scannedFiles, scannedBytes, bytesPerSecond, filesPerSecond);
+    }
+
+    public static final class Sample {
+        private final long files;
+        private final long bytes;
+        private final boolean scanning;
+        private final long totalBytes;
+        private final long scannedFiles;
+        private final long scannedBytes;
+        private final double bytesPerSecond;
+        private final double filesPerSecond;
+
+        private Sample(long files, long bytes, boolean scanning, long totalBytes, long scannedFiles, long scannedBytes, double bytesPerSecond, double filesPerSecond) {
+            this.files = files;
+            this.bytes = bytes;
+            this.scanning = scanning;
+            this.totalBytes = totalBytes;
+            this.scannedFiles = scannedFiles;
+            this.scannedBytes = scannedBytes;
+            this.bytesPerSecond = bytesPerSecond;
+            this.filesPerSecond = filesPerSecond;
+        }
+
+        public long files() {
+            return files;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        // -1 while the pre-scan runs or without one
+        public long totalBytes() {
+            return totalBytes;
+        }
+
+        public double percent() {
+            if(totalBytes < 0) {
+                return -1.0;
+            }
+            return totalBytes == 0 ? 100.0 : bytes * 100.0 / totalBytes;
+        }
+
+        public double bytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        public double filesPerSecond() {
+            return filesPerSecond;
+        }
+
+        // null as long as there is no total or no throughput yet
+        public Duration remaining() {
+            if(totalBytes < 0 || bytesPerSecond <= 0) {
+                return null;
+            }
+            return Duration.ofMillis((long) ((totalBytes - bytes) / bytesPerSecond * 1000.0));
+        }
+
+        public String describe(ResourceBundle messages) {
+            String rate = CheckCopy.formatBytes((long) bytesPerSecond);
+            if(totalBytes >= 0) {
+                Duration eta = remaining();
+                return String.format(messages.getString("progress_estimate"), percent(), CheckCopy.formatBytes(bytes), CheckCopy.formatBytes(totalBytes),
+                    rate, Math.round(filesPerSecond), eta != null ? CheckCopy.formatTime(eta) : "?");
+            }
+            if(scanning) {
+                return String.format(messages.getString("progress_scanning"), files, CheckCopy.formatBytes(bytes), rate, Math.round(filesPerSecond),
+                    scannedFiles, CheckCopy.formatBytes(scannedBytes));
+            }
+            return String.format(messages.getString("progress_plain"), files, CheckCopy.formatBytes(bytes), rate, Math.round(filesPerSecond));
+        }
+    }
+}
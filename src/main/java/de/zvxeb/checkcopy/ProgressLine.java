@@ -0,0 +1,115 @@
+package de.zvxeb.checkcopy;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ResourceBundle;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// live progress of the command line: on a terminal one line rewritten in place,
+// otherwise (log files, pipes) a plain line now and then; results reported while the
+// line is shown clear it first, the next tick draws it again below them
+class ProgressLine {
+    private static final long TERMINAL_INTERVAL = 500L;
+    private static final long LOG_INTERVAL = 60L * 1000L;
+
+    private final PrintStream out;
+    private final boolean terminal;
+    private final ScheduledExecutorService ticker;
+    private int width;
+
+    private ProgressLine(Progress progress, ResourceBundle messages, PrintStream out, boolean terminal) {
+        this.out = out;
+        this.terminal = terminal;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkcopy-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = terminal ? TERMINAL_INTERVAL : LOG_INTERVAL;
+        ticker.scheduleAtFixedRate(() -> print(progress.sample().describe(messages)), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // out is expected to be standard error
+    static ProgressLine start(Progress progress, ResourceBundle messages, PrintStream out) {
+        return new ProgressLine(progress, messages, out, interactive());
+    }
+
+    // Java cannot ask whether standard error is a terminal; Linux names the device the
+    // descriptor is open on, elsewhere a console (stdin and stdout on a terminal) has to do
+    static boolean interactive() {
+        if("dumb".equals(System.getenv("TERM"))) {
+            return false;
+        }
+        try {
+            String device = Files.readSymbolicLink(Paths.get("/proc/self/fd/2")).toString();
+            return device.startsWith("/dev/pts/") || device.startsWith("/dev/tty");
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return System.console() != null;
+        }
+    }
+
+    // reports through the sink clear the line, so they do not end up behind it
+    ResultSink around(ResultSink sink) {
+        if(!terminal) {
+            return sink;
+        }
+        return new ResultSink() {
+            @Override
+            public void accept(CheckResult cr) throws IOException {
+                synchronized(ProgressLine.this) {
+                    clear();
+                    sink.accept(cr);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                sink.close();
+            }
+        };
+    }
+
+    private synchronized void print(String line) {
+        if(!terminal) {
+            out.println(line);
+            return;
+        }
+        StringBuilder sb = new StringBuilder(Math.max(width, line.length()) + 1);
+        sb.append('\r').append(line);
+        // a shorter line has to overwrite the rest of the previous one
+        for(int i = line.length(); i < width; i++) {
+            sb.append(' ');
+        }
+        out.print(sb);
+        out.flush();
+        width = line.length();
+    }
+
+    private synchronized void clear() {
+        if(terminal && width > 0) {
+            StringBuilder sb = new StringBuilder(width + 2);
+            sb.append('\r');
+            for(int i = 0; i < width; i++) {
+                sb.append(' ');
+            }
+            out.print(sb.append('\r'));
+            out.flush();
+            width = 0;
+        }
+    }
+
+    // clears the line, the final report follows
+    void stop() {
+        ticker.shutdownNow();
+        try {
+            ticker.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        clear();
+    }
+}
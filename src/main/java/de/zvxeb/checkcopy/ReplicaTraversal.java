@@ -0,0 +1,325 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.conflict.ContentConflict;
+import de.zvxeb.checkcopy.conflict.SizeConflict;
+import de.zvxeb.checkcopy.conflict.TypeConflict;
+import de.zvxeb.checkcopy.exception.CheckCancelledException;
+import de.zvxeb.checkcopy.exception.ChecksumException;
+import de.zvxeb.checkcopy.exception.DirectoryReadException;
+import de.zvxeb.checkcopy.exception.NotADirectoryException;
+import de.zvxeb.checkcopy.hash.Hasher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+// one source against several destination replicas: each source directory is listed
+// once and each source file hashed at most once, while the replicas of a directory
+// are compared in parallel on the executor; a direct content comparison still reads
+// the source once per replica, the command line only allows it for one destination
+class ReplicaTraversal {
+    private static Logger log = LoggerFactory.getLogger(ReplicaTraversal.class);
+
+    private final CheckControl config;
+    private final CheckMeta meta;
+    private final List<Path> destinations;
+
+    private final ThreadLocal<Hasher> sourceHashers;
+    private final ThreadLocal<Hasher> destinationHashers;
+
+    private ReplicaTraversal(CheckControl config, CheckMeta meta, List<Path> destinations) {
+        this.config = config;
+        this.meta = meta;
+        this.destinations = destinations;
+        Hasher hs = config.hasherS();
+        Hasher hd = config.hasherD();
+        this.sourceHashers = hs != null ? ThreadLocal.withInitial(hs::copy) : null;
+        this.destinationHashers = hd != null ? ThreadLocal.withInitial(hd::copy) : null;
+    }
+
+    static List<CheckResult> checkCopy(CheckControl config, CheckMeta meta, Path source, List<Path> destinations) throws IOException {
+        ReplicaTraversal traversal = new ReplicaTraversal(config, meta, destinations);
+        return traversal.walk(source);
+    }
+
+    private static class Pending {
+        final Path relative;
+        final BitSet replicas;
+
+        Pending(Path relative, BitSet replicas) {
+            this.relative = relative;
+            this.replicas = replicas;
+        }
+    }
+
+    private List<CheckResult> walk(Path source) throws IOException {
+        List<CheckResult> result = new LinkedList<>();
+        Deque<Pending> pending = new ArrayDeque<>();
+        BitSet all = new BitSet();
+        all.set(0, destinations.size());
+        pending.push(new Pending(source.getFileSystem().getPath(""), all));
+
+        while(!pending.isEmpty()) {
+            Pending p = pending.pop();
+            config.checkCancelled();
+
+            Path sourceDirectory = source.resolve(p.relative);
+            if(!Files.isDirectory(sourceDirectory)) {
+                throw new NotADirectoryException(true, sourceDirectory.toString());
+            }
+            List<FileEntry> sourceFiles;
+            try {
+                sourceFiles = FileEntry.list(sourceDirectory, config, true);
+            } catch (IOException e) {
+                log.debug("Unable to list {}", sourceDirectory, e);
+                throw new DirectoryReadException(true, sourceDirectory.toString());
+            }
+            if(meta != null) {
+                meta.addListed(true, CheckCopy.listedBytes(sourceFiles));
+            }
+
+            long sourceFingerprint = config.journal() != null ? Journal.fingerprint(sourceFiles) : 0L;
+
+            // digests are shared by all replicas of this directory
+            Map<String, FutureTask<byte []>> sourceDigests = new ConcurrentHashMap<>();
+
+            List<Callable<CheckResult>> replicaChecks = new ArrayList<>();
+            for(int r = p.replicas.nextSetBit(0); r >= 0; r = p.replicas.nextSetBit(r + 1)) {
+                Path destinationDirectory = destinations.get(r).resolve(p.relative);
+                replicaChecks.add(() -> checkReplica(sourceDirectory, destinationDirectory, sourceFiles, sourceFingerprint, sourceDigests));
+            }
+            List<CheckResult> replicaResults = run(replicaChecks);
+
+            // the entries are done once every replica has been checked
+            if(meta != null) {
+                for(FileEntry es : sourceFiles) {
+                    if(es.isDirectory()) {
+                        meta.incDirectories();
+                    } else {
+                        meta.incFiles(es.size());
+                    }
+                }
+            }
+
+            Map<String, BitSet> subdirectories = new LinkedHashMap<>();
+            int i = 0;
+            for(int r = p.replicas.nextSetBit(0); r >= 0; r = p.replicas.nextSetBit(r + 1), i++) {
+                CheckResult cr = replicaResults.get(i);
+                CheckCopy.report(config, result, cr);
+                // like the single destination walk, fail fast only skips the children
+                if(!cr.ok() && config.failFast()) {
+                    continue;
+                }
+                for(FileEntry es : sourceFiles) {
+                    if(es.isDirectory() && !cr.isNotInDestination(es.file())) {
+                        subdirectories.computeIfAbsent(es.name(), n -> new BitSet()).set(r);
+                    }
+                }
+            }
+            // reverse order keeps the depth-first order of the listing
+            List<Map.Entry<String, BitSet>> sd = new ArrayList<>(subdirectories.entrySet());
+            for(int k = sd.size() - 1; k >= 0; k--) {
+                pending.push(new Pending(p.relative.resolve(sd.get(k).getKey()), sd.get(k).getValue()));
+            }
+        }
+
+        return result;
+    }
+
+    private List<CheckResult> run(List<Callable<CheckResult>> checks) throws IOException {
+        List<CheckResult> results = new ArrayList<>(checks.size());
+        if(config.executor() == null || checks.size() == 1) {
+            for(Callable<CheckResult> c : checks) {
+                try {
+                    results.add(c.call());
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return results;
+        }
+
+        List<Future<CheckResult>> futures = new ArrayList<>(checks.size());
+        try {
+            for(Callable<CheckResult> c : checks) {
+                futures.add(config.executor().submit(c));
+            }
+            for(Future<CheckResult> f : futures) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            config.cancel();
+            config.checkCancelled();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if(t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if(t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new IllegalStateException(t);
+        } finally {
+            for(Future<CheckResult> f : futures) {
+                f.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    private CheckResult checkReplica(Path source, Path destination, List<FileEntry> sourceFiles, long sourceFingerprint, Map<String, FutureTask<byte []>> sourceDigests) throws IOException {
+        log.debug("Checking {} | {}", source, destination);
+        config.checkCancelled();
+
+        if(!Files.isDirectory(destination)) {
+            throw new NotADirectoryException(false, destination.toString());
+        }
+        List<FileEntry> destinationFiles;
+        try {
+            destinationFiles = FileEntry.list(destination, config, false);
+        } catch (IOException e) {
+            log.debug("Unable to list {}", destination, e);
+            throw new DirectoryReadException(false, destination.toString());
+        }
+
+        if(meta != null) {
+            meta.addListed(false, CheckCopy.listedBytes(destinationFiles));
+        }
+
+        CheckResult cr = new CheckResult(source, destination, config.verificationTier());
+
+        Journal journal = config.journal();
+        long destinationFingerprint = journal != null ? Journal.fingerprint(destinationFiles) : 0L;
+        if(journal != null && journal.unchanged(source, destination, sourceFingerprint, destinationFingerprint)) {
+            log.debug("Unchanged since last verification - skipping {}", destination);
+            return cr;
+        }
+
+        Map<String, FileEntry> destinationIndex = CheckCopy.indexByName(destinationFiles);
+
+        for(FileEntry es : FileOrder.of(config, sourceFiles)) {
+            config.checkCancelled();
+
+            File fs = es.file();
+            boolean fsd = es.isDirectory();
+            boolean found = false;
+            boolean fail = false;
+            FileEntry ed = destinationIndex.get(es.name());
+            if(ed != null) {
+                File fd = ed.file();
+                found = true;
+                if(fsd != ed.isDirectory()) {
+                    TypeConflict tc = TypeConflict.causedBy(!fsd);
+                    cr.addConflict(fs, tc, VerificationTier.EXISTENCE);
+                    if(config.eventListener()!=null) {
+                        config.eventListener().onConflict(config, source, destination, fs, fd, tc);
+                    }
+                    fail = true;
+                } else if(!fsd && (config.checkSize() || config.checksum() || config.compareContent())) {
+                    if(es.size() != ed.size()) {
+                        found = false;
+                        SizeConflict sc = SizeConflict.causedBy(es.size(), ed.size());
+                        cr.addConflict(fs, sc, VerificationTier.SIZE);
+                        if(config.eventListener()!=null) {
+                            config.eventListener().onConflict(config, source, destination, fs, fd, sc);
+                        }
+                    } else if(config.compareContent()) {
+                        long offset = CheckCopy.compareContent(config, fs, fd);
+                        if(offset != ContentComparator.EQUAL) {
+                            found = false;
+                            ContentConflict cc = ContentConflict.causedBy(offset);
+                            cr.addConflict(fs, cc, VerificationTier.CONTENT);
+                            if(config.eventListener()!=null) {
+                                config.eventListener().onConflict(config, source, destination, fs, fd, cc);
+                            }
+                        }
+                    } else if(config.checksum()) {
+                        byte [] scs = sourceDigest(es, sourceDigests);
+                        Hasher hd = destinationHashers.get();
+                        byte [] dcs = CheckCopy.checksum(config, meta, false, hd, ed, DigestScratch.get(false, hd));
+                        if(!MessageDigest.isEqual(scs, dcs)) {
+                            found = false;
+                            ChecksumConflict cc = ChecksumConflict.causedBy(CheckCopy.digestToHex(scs), CheckCopy.digestToHex(dcs), config.checksumReader().treeChunkSize(es.size()));
+                            cr.addConflict(fs, cc, config.checksumTier(es.size()));
+                            if(config.eventListener()!=null) {
+                                config.eventListener().onConflict(config, source, destination, fs, fd, cc);
+                            }
+                        }
+                    }
+                }
+            }
+            if(!found) {
+                cr.addNotInDestination(fs);
+                if(config.eventListener()!=null) {
+                    config.eventListener().onNotInDestination(config, source, destination, fs);
+                }
+                fail = true;
+            }
+            if(fail && config.failFast()) {
+                break;
+            }
+        }
+
+        Set<String> sourceNames = CheckCopy.names(sourceFiles);
+        for(FileEntry ed : destinationFiles) {
+            if(!sourceNames.contains(ed.name())) {
+                cr.addNotInSource(ed.file());
+                if(config.eventListener()!=null) {
+                    config.eventListener().onNotInSource(config, source, destination, ed.file());
+                }
+                if(config.failFast() && config.failOnDestination()) {
+                    break;
+                }
+            }
+        }
+
+        if(journal != null) {
+            journal.record(cr, source, destination, sourceFingerprint, destinationFingerprint);
+        }
+
+        return cr;
+    }
+
+    // the first replica that needs a digest computes it, the others wait for it
+    private byte [] sourceDigest(FileEntry es, Map<String, FutureTask<byte []>> sourceDigests) throws IOException {
+        FutureTask<byte []> task = new FutureTask<>(() -> CheckCopy.checksum(config, meta, true, sourceHashers.get(), es));
+        FutureTask<byte []> existing = sourceDigests.putIfAbsent(es.name(), task);
+        if(existing == null) {
+            task.run();
+        } else {
+            task = existing;
+        }
+        try {
+            if(existing == null) {
+                return task.get();
+            }
+            long waitStart = System.nanoTime();
+            byte [] digest = task.get();
+            CheckCopy.hashWait(config, meta, System.nanoTime() - waitStart);
+            return digest;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            config.cancel();
+            throw new CheckCancelledException();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if(t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if(t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new ChecksumException(es.file().getPath());
+        }
+    }
+}
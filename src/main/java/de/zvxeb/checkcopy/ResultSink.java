@@ -0,0 +1,14 @@
+package de.zvxeb.checkcopy;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// receives every directory with problems as soon as its checks are complete;
+// called from traversal and hashing threads, implementations must be thread safe
+public interface ResultSink extends Closeable {
+    void accept(CheckResult cr) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,65 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.conflict.Conflict;
+import de.zvxeb.checkcopy.conflict.ContentConflict;
+import de.zvxeb.checkcopy.conflict.SizeConflict;
+import de.zvxeb.checkcopy.conflict.TypeConflict;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// writes each reported directory right away and flushes, so nothing piles up in memory
+public abstract class ResultWriter implements ResultSink {
+    public static final String NOT_IN_DESTINATION = "not_in_destination";
+    public static final String NOT_IN_SOURCE = "not_in_source";
+    public static final String CONFLICT = "conflict";
+
+    protected final Writer out;
+    private final boolean closeWriter;
+
+    private int problems;
+
+    protected ResultWriter(Writer out, boolean closeWriter) {
+        this.out = out;
+        this.closeWriter = closeWriter;
+    }
+
+    public synchronized int problems() {
+        return problems;
+    }
+
+    @Override
+    public synchronized void accept(CheckResult cr) throws IOException {
+        problems++;
+        write(cr);
+        out.flush();
+    }
+
+    protected abstract void write(CheckResult cr) throws IOException;
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(closeWriter) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+
+    static String conflictType(Conflict c) {
+        if(c instanceof TypeConflict) {
+            return "type";
+        }
+        if(c instanceof SizeConflict) {
+            return "size";
+        }
+        if(c instanceof ChecksumConflict) {
+            return "checksum";
+        }
+        if(c instanceof ContentConflict) {
+            return "content";
+        }
+        return "other";
+    }
+}
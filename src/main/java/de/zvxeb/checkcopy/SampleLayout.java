@@ -0,0 +1,67 @@
+package de.zvxeb.checkcopy;
+
+// which blocks of a file are hashed in sampled mode; the layout only depends on the
+// file size so source and destination always sample the same offsets
+public class SampleLayout {
+    public static final int DEFAULT_BLOCKS = 16;
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private static final long ALIGNMENT = 4096;
+
+    private final int blocks;
+    private final int blockSize;
+
+    public SampleLayout(int blocks, int blockSize) {
+        if(blocks < 0) {
+            throw new IllegalArgumentException("Number of sample blocks must not be negative: " + blocks);
+        }
+        if(blockSize <= 0) {
+            throw new IllegalArgumentException("Sample block size must be positive: " + blockSize);
+        }
+        this.blocks = blocks;
+        this.blockSize = blockSize;
+    }
+
+    public int blocks() {
+        return blocks;
+    }
+
+    public int blockSize() {
+        return blockSize;
+    }
+
+    // smaller files are hashed completely
+    public boolean sampled(long size) {
+        return size > (long) (blocks + 2) * blockSize;
+    }
+
+    // sorted offsets of head, inner blocks and tail
+    public long [] offsets(long size) {
+        long [] offsets = new long [blocks + 2];
+        offsets[0] = 0;
+        long inner = size - 2L * blockSize;
+        long stratum = inner / Math.max(1, blocks);
+        for(int i = 0; i < blocks; i++) {
+            long start = blockSize + i * stratum;
+            long range = Math.max(1, stratum - blockSize);
+            long offset = start + Long.remainderUnsigned(mix(size, i), range);
+            offset -= offset % ALIGNMENT;
+            offsets[i + 1] = Math.max(start - start % ALIGNMENT, offset);
+        }
+        offsets[blocks + 1] = size - blockSize;
+        return offsets;
+    }
+
+    private static long mix(long size, int i) {
+        // splitmix64 finalizer
+        long z = size * 0x9E3779B97F4A7C15L + i;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return "sampled:" + blocks + "x" + blockSize;
+    }
+}
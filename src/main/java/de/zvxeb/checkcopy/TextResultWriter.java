@@ -0,0 +1,48 @@
+package de.zvxeb.checkcopy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ResourceBundle;
+
+// the human readable listing of the command line
+public class TextResultWriter extends ResultWriter {
+    private final ResourceBundle messages;
+
+    public TextResultWriter(Writer out, boolean closeWriter, ResourceBundle messages) {
+        super(out, closeWriter);
+        this.messages = messages;
+    }
+
+    @Override
+    protected void write(CheckResult cr) throws IOException {
+        out.write(String.format("%s (%s) [%s]:\n", cr.sourcePath(), cr.destinationPath(), messages.getString(cr.tier().messageKey())));
+        if(!cr.notInDestination().isEmpty()) {
+            out.write(String.format(messages.getString("cli_not_in_destination"), cr.notInDestination().size()));
+            out.write('\n');
+            for(File f : cr.notInDestination()) {
+                out.write(String.format(" - %s%s\n", f.isDirectory() ? "[D] " : "", f.getName()));
+            }
+        }
+        if(!cr.conflicts().isEmpty()) {
+            out.write(String.format(messages.getString("cli_conflict"), cr.conflicts().size()));
+            out.write('\n');
+            for(File f : cr.conflicts()) {
+                out.write(String.format(" - %s%s (%s)%s\n", f.isDirectory() ? "[D] " : "", f.getName(), cr.conflictDetails().get(f).getMessage(), tier(cr, f)));
+            }
+        }
+        if(!cr.notInSource().isEmpty()) {
+            out.write(String.format(messages.getString("cli_not_in_source"), cr.notInSource().size()));
+            out.write('\n');
+            for(File f : cr.notInSource()) {
+                out.write(String.format(" - %s%s\n", f.isDirectory() ? "[D] " : "", f.getName()));
+            }
+        }
+    }
+
+    // conflicts found below the tier of the check, e.g. sizes or files too small to be sampled
+    private String tier(CheckResult cr, File f) {
+        VerificationTier t = cr.tier(f);
+        return t == cr.tier() ? "" : String.format(" [%s]", messages.getString(t.messageKey()));
+    }
+}
@@ -0,0 +1,43 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.conflict.Conflict;
+
+import java.io.File;
+import java.nio.file.Path;
+
+// measures how long the traversal spends inside listener callbacks
+class TimedEventListener implements CheckEventListener {
+    private final CheckEventListener listener;
+    private final CheckMetrics metrics;
+
+    TimedEventListener(CheckEventListener listener, CheckMetrics metrics) {
+        this.listener = listener;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onNotInDestination(CheckControl cc, Path source, Path destination, File f) {
+        long start = System.nanoTime();
+        listener.onNotInDestination(cc, source, destination, f);
+        metrics.record(CheckMetrics.Phase.CALLBACKS, System.nanoTime() - start);
+    }
+
+    @Override
+    public void onNotInSource(CheckControl cc, Path source, Path destination, File f) {
+        long start = System.nanoTime();
+        listener.onNotInSource(cc, source, destination, f);
+        metrics.record(CheckMetrics.Phase.CALLBACKS, System.nanoTime() - start);
+    }
+
+    @Override
+    public void onConflict(CheckControl cc, Path source, Path destination, File fs, File fd, Conflict c) {
+        long start = System.nanoTime();
+        listener.onConflict(cc, source, destination, fs, fd, c);
+        metrics.record(CheckMetrics.Phase.CALLBACKS, System.nanoTime() - start);
+    }
+
+    @Override
+    public void onCancelled(CheckControl cc) {
+        listener.onCancelled(cc);
+    }
+}
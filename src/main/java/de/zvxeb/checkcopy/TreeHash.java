@@ -0,0 +1,109 @@
+package de.zvxeb.checkcopy;
+
+import de.zvxeb.checkcopy.hash.Hasher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// splits large files into fixed chunks that are hashed in parallel; the root digest
+// is the hash of the chunk size followed by all chunk digests in file order
+public class TreeHash {
+    public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    private final long chunkSize;
+    private final ForkJoinPool pool;
+
+    public TreeHash(long chunkSize, ForkJoinPool pool) {
+        if(chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    public long chunkSize() {
+        return chunkSize;
+    }
+
+    public ForkJoinPool pool() {
+        return pool;
+    }
+
+    public boolean applies(long size) {
+        return size > chunkSize;
+    }
+
+    byte [] digest(ChecksumReader reader, CancellationCheck cc, IoGovernor.Budget budget, Hasher hasher, FileChannel fc, long size) throws IOException {
+        List<ForkJoinTask<byte []>> chunks = new ArrayList<>();
+        for(long position = 0; position < size; position += chunkSize) {
+            long start = position;
+            long length = Math.min(chunkSize, size - position);
+            Hasher chunkHasher = hasher.copy();
+            chunks.add(pool.submit(() -> {
+                try {
+                    return reader.digestRange(cc, budget, chunkHasher, fc, start, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+
+        hasher.reset();
+        hasher.update(longBytes(chunkSize), 0, 8);
+        boolean cancelled = false;
+        for(ForkJoinTask<byte []> chunk : chunks) {
+            byte [] d;
+            try {
+                d = chunk.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+                break;
+            } catch (ExecutionException e) {
+                cancelAll(chunks);
+                if(e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            if(d == null) {
+                cancelled = true;
+                break;
+            }
+            hasher.update(d, 0, d.length);
+        }
+
+        if(cancelled) {
+            cancelAll(chunks);
+            hasher.reset();
+            return null;
+        }
+        return hasher.digest();
+    }
+
+    private static void cancelAll(List<ForkJoinTask<byte []>> chunks) {
+        for(ForkJoinTask<byte []> chunk : chunks) {
+            chunk.cancel(false);
+        }
+    }
+
+    private static byte [] longBytes(long v) {
+        byte [] b = new byte [8];
+        for(int i = 7; i >= 0; i--) {
+            b[i] = (byte) v;
+            v >>>= 8;
+        }
+        return b;
+    }
+
+    @Override
+    public String toString() {
+        return "tree:" + chunkSize;
+    }
+}
@@ -0,0 +1,19 @@
+package de.zvxeb.checkcopy;
+
+public enum VerificationTier {
+    EXISTENCE("tier_existence"),
+    SIZE("tier_size"),
+    SAMPLED("tier_sampled"),
+    CHECKSUM("tier_checksum"),
+    CONTENT("tier_content");
+
+    private final String messageKey;
+
+    VerificationTier(String messageKey) {
+        this.messageKey = messageKey;
+    }
+
+    public String messageKey() {
+        return messageKey;
+    }
+}
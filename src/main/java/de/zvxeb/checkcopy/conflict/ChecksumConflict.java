@@ -3,17 +3,31 @@ package de.zvxeb.checkcopy.conflict;
 public class ChecksumConflict extends Conflict {
     String sourceChecksum;
     String destinationChecksum;
+    long treeChunkSize;
 
     public ChecksumConflict(String source, String destination) {
+        this(source, destination, 0L);
+    }
+
+    public ChecksumConflict(String source, String destination, long treeChunkSize) {
         sourceChecksum = source;
         destinationChecksum = destination;
-        setMessage(String.format(messages.getString("conflict_checksum"), source, destination));
+        this.treeChunkSize = treeChunkSize;
+        if(treeChunkSize > 0) {
+            setMessage(String.format(messages.getString("conflict_checksum_tree"), source, destination, treeChunkSize / (1024 * 1024)));
+        } else {
+            setMessage(String.format(messages.getString("conflict_checksum"), source, destination));
+        }
     }
 
     public static ChecksumConflict causedBy(String source, String destination) {
         return new ChecksumConflict(source, destination);
     }
 
+    public static ChecksumConflict causedBy(String source, String destination, long treeChunkSize) {
+        return new ChecksumConflict(source, destination, treeChunkSize);
+    }
+
     public String sourceChecksum() {
         return sourceChecksum;
     }
@@ -21,4 +35,13 @@ public class ChecksumConflict extends Conflict {
     public String destinationChecksum() {
         return destinationChecksum;
     }
+
+    // 0 for a flat digest, otherwise the chunk size of the tree root digests
+    public long treeChunkSize() {
+        return treeChunkSize;
+    }
+
+    public boolean isTreeDigest() {
+        return treeChunkSize > 0;
+    }
 }
@@ -0,0 +1,18 @@
+package de.zvxeb.checkcopy.conflict;
+
+public class ContentConflict extends Conflict {
+    private long offset;
+
+    public ContentConflict(long offset) {
+        this.offset = offset;
+        setMessage(String.format(messages.getString("conflict_content"), offset));
+    }
+
+    public static ContentConflict causedBy(long offset) {
+        return new ContentConflict(offset);
+    }
+
+    public long offset() {
+        return offset;
+    }
+}
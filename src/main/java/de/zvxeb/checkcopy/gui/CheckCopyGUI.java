@@ -4,20 +4,29 @@ import de.zvxeb.checkcopy.CheckControl;
 import de.zvxeb.checkcopy.CheckCopy;
 import de.zvxeb.checkcopy.CheckEventListener;
 import de.zvxeb.checkcopy.CheckMeta;
-import de.zvxeb.checkcopy.conflict.ChecksumConflict;
+import de.zvxeb.checkcopy.ChecksumCache;
+import de.zvxeb.checkcopy.IoScheduler;
+import de.zvxeb.checkcopy.Journal;
+import de.zvxeb.checkcopy.PreScan;
+import de.zvxeb.checkcopy.Progress;
 import de.zvxeb.checkcopy.conflict.Conflict;
-import de.zvxeb.checkcopy.conflict.SizeConflict;
-import de.zvxeb.checkcopy.conflict.TypeConflict;
 import de.zvxeb.checkcopy.exception.CheckCancelledException;
 import de.zvxeb.checkcopy.exception.ChecksumException;
 import de.zvxeb.checkcopy.exception.DirectoryReadException;
 import de.zvxeb.checkcopy.exception.NotADirectoryException;
+import de.zvxeb.checkcopy.hash.CRC32CHasher;
+import de.zvxeb.checkcopy.hash.Hasher;
+import de.zvxeb.checkcopy.hash.Hashers;
+import de.zvxeb.checkcopy.hash.XXHash64Hasher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.BevelBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableRowSorter;
 import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -27,18 +36,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Locale;
 import java.util.ResourceBundle;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
 
 public class CheckCopyGUI implements Runnable {
 
     private static Logger log = LoggerFactory.getLogger(CheckCopyGUI.class);
 
+    // new results and the progress are pushed to the window about 30 times per second
+    private static final int REFRESH_INTERVAL = 1000 / 30;
+    // a sorted or filtered view maps all of its rows again for each batch, so it gets fewer
+    private static final long TRANSFORMED_PUBLISH_INTERVAL = 1000L;
+    // the filter is applied once typing pauses
+    private static final int FILTER_DELAY = 250;
+
+    private static final AttributeSet LOG_TEXT = logStyle(Color.black);
+    private static final AttributeSet LOG_ERROR = logStyle(Color.red);
+
     private JFrame frame;
     private ComboBoxModel<String> cbmChecksum;
     private JCheckBox cbCheckSize;
@@ -55,9 +75,18 @@ public class CheckCopyGUI implements Runnable {
     private JButton btnClearLog;
     private JComboBox<String> cbChecksum;
     private JCheckBox cbReadParallel;
+    private JCheckBox cbPreScan;
     private JTextPane tpLog;
     private JScrollPane spLog;
     private JTextField tfStatus;
+    private JTable tResults;
+    private ResultTableModel resultModel;
+    private TableRowSorter<ResultTableModel> resultSorter;
+    private JTextField tfFilter;
+    private JLabel lResultCount;
+    private Timer refreshTimer;
+    private long lastPublish;
+    private Timer filterTimer;
     private JButton btnCheck;
     private JButton sourceButton;
     private JButton destinationButton;
@@ -65,6 +94,7 @@ public class CheckCopyGUI implements Runnable {
     private CheckControl control = null;
 
     private CheckMeta metaInformation = null;
+    private Progress progress = null;
     private Instant start;
 
     private CheckCopy ccConfig = null;
@@ -93,6 +123,7 @@ public class CheckCopyGUI implements Runnable {
                 cbCheckSize,
                 cbChecksum,
                 cbReadParallel,
+                cbPreScan,
                 btnLogHandling,
                 btnClearLog
         );
@@ -109,44 +140,24 @@ public class CheckCopyGUI implements Runnable {
             cbCheckSize,
             cbChecksum,
             cbReadParallel,
+            cbPreScan,
             btnLogHandling,
             btnClearLog
         );
     }
 
+    // problems reach the table through the result store, one entry per file
     private CheckEventListener eventListener = new CheckEventListener() {
         @Override
         public void onNotInDestination(CheckControl cc, Path source, Path destination, File f) {
-            log(String.format(messages.getString("issue_not_in_destination"), f));
         }
 
         @Override
         public void onNotInSource(CheckControl cc, Path source, Path destination, File f) {
-            log(String.format(messages.getString("issue_not_in_source"), f));
         }
 
         @Override
         public void onConflict(CheckControl cc, Path source, Path destination, File fs, File fd, Conflict c) {
-            if(c instanceof TypeConflict) {
-                TypeConflict tc = (TypeConflict) c;
-                if(tc.isFile()) {
-                    log(String.format(messages.getString("issue_type_source_file"), fs, fd));
-                } else {
-                    log(String.format(messages.getString("issue_type_source_dir"), fs, fd));
-                }
-                return;
-            }
-            if(c instanceof SizeConflict) {
-                SizeConflict sc = (SizeConflict) c;
-                log(String.format(messages.getString("issue_size"), fs, sc.sourceSize(), sc.destinationSize()));
-                return;
-            }
-            if(c instanceof ChecksumConflict) {
-                ChecksumConflict sc = (ChecksumConflict) c;
-                log(String.format(messages.getString("issue_checksum"), fs, sc.sourceChecksum(), sc.destinationChecksum()));
-                return;
-            }
-            logError(c.toString());
         }
 
         @Override
@@ -205,12 +216,16 @@ public class CheckCopyGUI implements Runnable {
         if(cbChecksum.getSelectedIndex() == 0) {
             log(messages.getString("process_no_checksum"));
             control.checksum(false);
+        } else if(cbChecksum.getSelectedIndex() == 1) {
+            log(messages.getString("process_compare_content"));
+            control.checksum(false);
+            control.compareContent(true);
         } else {
             String digestAlgorithm = String.valueOf(cbmChecksum.getSelectedItem()).trim();
             log.debug("Trying to get message digest for {}", digestAlgorithm);
             try {
-                MessageDigest md = MessageDigest.getInstance(digestAlgorithm);
-                control.checksum(md);
+                Hasher hasher = Hashers.forName(digestAlgorithm);
+                control.checksum(hasher);
             } catch (NoSuchAlgorithmException e) {
                 logError(String.format(messages.getString("error_java"), e.getLocalizedMessage()));
 
@@ -232,48 +247,115 @@ public class CheckCopyGUI implements Runnable {
             control.executor(null);
         }
 
+        IoScheduler scheduler = ccConfig.ioScheduler();
+        if(scheduler != null) {
+            scheduler.register(pSource);
+            scheduler.register(pDestination);
+            for(IoScheduler.Device d : scheduler.devices()) {
+                log(String.format(messages.getString("process_io_device"), d.name(), d.kind(), d.reads()));
+            }
+            control.ioScheduler(scheduler);
+        }
+
         if(cbReadParallel.isSelected()) {
-            control.executor(Executors.newFixedThreadPool(2));
+            control.executor(Executors.newFixedThreadPool(Math.max(2, scheduler != null ? scheduler.threads() : 0)));
         } else {
             control.executor(null);
             log(messages.getString("process_no_parallel_read"));
         }
 
+        if(ccConfig.bufferSizeKiB > 0) {
+            control.checksumReader(ccConfig.checksumReader());
+        }
+
+        if(ccConfig.checksumCacheFile != null && control.checksum()) {
+            try {
+                control.checksumCache(ChecksumCache.open(Paths.get(ccConfig.checksumCacheFile), ccConfig.checksumCacheEntries));
+                log(String.format(messages.getString("process_checksum_cache"), control.checksumCache().file(), control.checksumCache().size()));
+            } catch (IOException e) {
+                logError(String.format(messages.getString("error_cache_load"), ccConfig.checksumCacheFile, e.getLocalizedMessage()));
+            }
+        }
+
+        if(ccConfig.journalFile != null) {
+            try {
+                control.journal(Journal.open(Paths.get(ccConfig.journalFile)));
+                log(String.format(messages.getString("process_journal"), control.journal().file(), control.journal().size()));
+            } catch (IOException e) {
+                logError(String.format(messages.getString("error_journal_load"), ccConfig.journalFile, e.getLocalizedMessage()));
+            }
+        }
+
+        if(ccConfig.sampleBlocks > 0 && control.checksum()) {
+            control.sampleLayout(ccConfig.sampleLayout());
+            log(String.format(messages.getString("process_sampled"), ccConfig.sampleBlocks, ccConfig.sampleBlockSizeKiB));
+        }
+
+        if(ccConfig.treeChunkMiB > 0 && ccConfig.treeThreads > 0 && control.checksum()) {
+            control.treeHash(ccConfig.treeHash());
+            log(String.format(messages.getString("process_tree_hash"), ccConfig.treeChunkMiB, ccConfig.treeThreads));
+        }
+
+        if(ccConfig.asyncReadDepth > 0 && control.checksum()) {
+            control.asyncReads(ccConfig.asyncReads());
+            log(String.format(messages.getString("process_async_reads"), ccConfig.asyncReadDepth));
+        }
+
+        if(ccConfig.pipelineDepth > 0 && control.checksum() && control.executor() != null) {
+            control.pipelineDepth(ccConfig.pipelineDepth);
+            log(String.format(messages.getString("process_checksum_pipeline"), ccConfig.pipelineDepth));
+        }
+
+        if(ccConfig.sourceLimitMiB > 0 || ccConfig.sourceIops > 0) {
+            control.readLimit(true, ccConfig.sourceLimitMiB * 1024L * 1024L, ccConfig.sourceIops);
+            log(String.format(messages.getString("process_read_limit_source"), ccConfig.sourceLimitMiB, ccConfig.sourceIops));
+        }
+        if(ccConfig.destinationLimitMiB > 0 || ccConfig.destinationIops > 0) {
+            control.readLimit(false, ccConfig.destinationLimitMiB * 1024L * 1024L, ccConfig.destinationIops);
+            log(String.format(messages.getString("process_read_limit_destination"), ccConfig.destinationLimitMiB, ccConfig.destinationIops));
+        }
+
+        if(ccConfig.physicalOrder && (control.checksum() || control.compareContent())) {
+            control.physicalOrder(true);
+            log(messages.getString("process_physical_order"));
+            if(ccConfig.orderWindow > 0 && control.pipelineDepth() > 0) {
+                control.orderWindow(ccConfig.orderWindow);
+                log(String.format(messages.getString("process_order_window"), ccConfig.orderWindow));
+            }
+        }
+
+        if(ccConfig.traversalThreads > 0) {
+            control.traversalPool(new ForkJoinPool(ccConfig.traversalThreads));
+            log(String.format(messages.getString("process_parallel_traversal"), ccConfig.traversalThreads));
+        }
+
         control.eventListener(eventListener);
+        control.resultSink(resultModel.reset());
+        showResultCount();
 
         btnCheck.setText(messages.getString("action_cancel_check"));
         btnCheck.setToolTipText(messages.getString("action_cancel_check_tooltip"));
 
         metaInformation = new CheckMeta();
+        PreScan scan = null;
+        if(cbPreScan.isSelected()) {
+            log(messages.getString("process_pre_scan"));
+            scan = PreScan.start(control, pSource, pDestination);
+        }
+        progress = new Progress(metaInformation, scan);
+        start = Instant.now();
+        refreshTimer.start();
 
         new Thread(() -> {
-            while(control != null && !control.cancelled()) {
-                if(metaInformation!=null) {
-                    if(metaInformation.numberOfFiles() > 0 && start != null) {
-                        Duration d = Duration.between(start, Instant.now());
-                        status(String.format(messages.getString("status_progress"), metaInformation.numberOfFiles(), metaInformation.numberOfDirectories(), CheckCopy.formatTime(d)));
-                    }
-                }
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }).start();
-
-        new Thread(() -> {
-
+            String outcome = messages.getString("status_error");
             try {
-                start = Instant.now();
                 CheckCopy.checkCopy(control, metaInformation, pSource, pDestination);
                 Instant end = Instant.now();
                 Duration d = Duration.between(start, end);
                 String durS = CheckCopy.formatTime(d);
                 log(String.format(messages.getString("status_progress_final"), metaInformation.numberOfFiles(), metaInformation.numberOfDirectories(), durS));
-                status(messages.getString("status_done"));
+                outcome = messages.getString("status_done");
             } catch (IOException e) {
-                status(messages.getString("status_error"));
                 boolean handled = false;
                 if(e instanceof NotADirectoryException) {
                     handled = true;
@@ -309,17 +391,73 @@ public class CheckCopyGUI implements Runnable {
                 }
             }
             catch(CheckCancelledException cce) {
-                status(messages.getString("status_cancelled"));
+                outcome = messages.getString("status_cancelled");
             } finally {
+                PreScan ps = progress.scan();
+                if(ps != null) {
+                    ps.stop();
+                    log(String.format(messages.getString("process_pre_scan_totals"), ps.files(true), CheckCopy.formatBytes(ps.bytes(true)), ps.files(false), CheckCopy.formatBytes(ps.bytes(false))));
+                }
                 control.release();
-                control = null;
-                enableConfig();
+                String status = outcome;
+                SwingUtilities.invokeLater(() -> finished(status));
             }
-            btnCheck.setText(messages.getString("action_check_copy"));
-            btnCheck.setToolTipText(messages.getString("action_check_copy_tooltip"));
         }).start();
     }
 
+    // on the event dispatch thread once the worker is done
+    private void finished(String outcome) {
+        refreshTimer.stop();
+        publish();
+        refresh();
+        status(outcome);
+        control = null;
+        enableConfig();
+        btnCheck.setText(messages.getString("action_check_copy"));
+        btnCheck.setToolTipText(messages.getString("action_check_copy_tooltip"));
+    }
+
+    private void refresh() {
+        long now = System.currentTimeMillis();
+        boolean transformed = !resultSorter.getSortKeys().isEmpty() || resultSorter.getRowFilter() != null;
+        if(!transformed || now - lastPublish >= TRANSFORMED_PUBLISH_INTERVAL) {
+            lastPublish = now;
+            publish();
+        }
+        if(metaInformation != null && metaInformation.numberOfFiles() > 0 && start != null) {
+            Duration d = Duration.between(start, Instant.now());
+            String processed = String.format(messages.getString("status_progress"), metaInformation.numberOfFiles(), metaInformation.numberOfDirectories(), CheckCopy.formatTime(d));
+            status(String.format(messages.getString("status_progress_detail"), processed, progress.sample().describe(messages)));
+        }
+    }
+
+    private void publish() {
+        if(resultModel.publish() > 0) {
+            showResultCount();
+            if(cbAutoScroll.isSelected() && resultSorter.getSortKeys().isEmpty()) {
+                int last = tResults.getRowCount() - 1;
+                if(last >= 0) {
+                    tResults.scrollRectToVisible(tResults.getCellRect(last, 0, true));
+                }
+            }
+        }
+    }
+
+    private void applyFilter() {
+        String text = tfFilter.getText().trim();
+        if(text.isEmpty()) {
+            resultSorter.setRowFilter(null);
+        } else {
+            // the details are formatted per row, matching them would format every entry
+            resultSorter.setRowFilter(RowFilter.regexFilter("(?iu)" + Pattern.quote(text), ResultTableModel.COLUMN_KIND, ResultTableModel.COLUMN_NAME, ResultTableModel.COLUMN_DIRECTORY));
+        }
+        showResultCount();
+    }
+
+    private void showResultCount() {
+        lResultCount.setText(String.format(messages.getString("result_count"), resultSorter.getViewRowCount(), resultModel.getRowCount()));
+    }
+
     @Override
     public void run() {
         messages = ResourceBundle.getBundle("messages", Locale.getDefault());
@@ -459,12 +597,14 @@ public class CheckCopyGUI implements Runnable {
         );
         cbCheckSize.setSelected(!ccConfig.noSizeCheck);
 
-        cbmChecksum = new DefaultComboBoxModel<String>(new String [] { messages.getString("option_checksum_no_check"), "MD5", "SHA-1", "SHA-256" });
+        cbmChecksum = new DefaultComboBoxModel<String>(new String [] { messages.getString("option_checksum_no_check"), messages.getString("option_checksum_compare"), "MD5", "SHA-1", "SHA-256", CRC32CHasher.ALGORITHM, XXHash64Hasher.ALGORITHM });
         cbChecksum = new JComboBox<>(cbmChecksum);
         cbChecksum.setToolTipText(messages.getString("option_checksum_tooltip"));
         cbChecksum.setEditable(true);
 
-        if(!ccConfig.checkSumAlgorithm.equalsIgnoreCase(CheckCopy.NULL)) {
+        if(ccConfig.compareContent) {
+            cbmChecksum.setSelectedItem(cbmChecksum.getElementAt(1));
+        } else if(!ccConfig.checkSumAlgorithm.equalsIgnoreCase(CheckCopy.NULL)) {
             boolean found = false;
             for(int i = 0; i < cbmChecksum.getSize(); i++) {
                 if(cbmChecksum.getElementAt(i).equalsIgnoreCase(ccConfig.checkSumAlgorithm)) {
@@ -489,6 +629,10 @@ public class CheckCopyGUI implements Runnable {
             cbReadParallel.setEnabled(false);
         }
 
+        cbPreScan = new JCheckBox(messages.getString("option_pre_scan"));
+        cbPreScan.setToolTipText(messages.getString("option_pre_scan_tooltip"));
+        cbPreScan.setSelected(ccConfig.progress);
+
 
         JPanel pOptions = new JPanel();
         pOptions.setLayout(new GridBagLayout());
@@ -512,6 +656,8 @@ public class CheckCopyGUI implements Runnable {
         gbc.gridx = 4;
         pOptions.add(cbReadParallel, gbc);
         gbc.gridx = 5;
+        pOptions.add(cbPreScan, gbc);
+        gbc.gridx = 6;
         gbc.weightx = 1;
         pOptions.add(Box.createGlue(), gbc);
 
@@ -648,7 +794,80 @@ public class CheckCopyGUI implements Runnable {
         spLog.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
         spLog.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
 
-        frame.add(spLog, BorderLayout.CENTER);
+        // RESULTS
+
+        resultModel = new ResultTableModel(messages);
+        resultSorter = new TableRowSorter<>(resultModel);
+        // the collator is too slow for millions of rows
+        resultSorter.setComparator(ResultTableModel.COLUMN_NAME, String.CASE_INSENSITIVE_ORDER);
+        resultSorter.setComparator(ResultTableModel.COLUMN_DIRECTORY, String.CASE_INSENSITIVE_ORDER);
+        resultSorter.setSortable(ResultTableModel.COLUMN_DETAILS, false);
+        // small batches are merged into the view instead of sorting and filtering all rows again
+        resultSorter.setSortsOnUpdates(true);
+
+        tResults = new JTable(resultModel);
+        tResults.setRowSorter(resultSorter);
+        tResults.setFillsViewportHeight(true);
+        tResults.getColumnModel().getColumn(ResultTableModel.COLUMN_KIND).setPreferredWidth(100);
+        tResults.getColumnModel().getColumn(ResultTableModel.COLUMN_NAME).setPreferredWidth(200);
+        tResults.getColumnModel().getColumn(ResultTableModel.COLUMN_DIRECTORY).setPreferredWidth(300);
+        tResults.getColumnModel().getColumn(ResultTableModel.COLUMN_DETAILS).setPreferredWidth(400);
+        JScrollPane spResults = new JScrollPane(tResults);
+        spResults.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+
+        tfFilter = new JTextField();
+        tfFilter.setToolTipText(messages.getString("result_filter_tooltip"));
+        filterTimer = new Timer(FILTER_DELAY, e -> applyFilter());
+        filterTimer.setRepeats(false);
+        tfFilter.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                filterTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                filterTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                filterTimer.restart();
+            }
+        });
+
+        lResultCount = new JLabel();
+
+        JPanel pFilter = new JPanel();
+        pFilter.setLayout(new GridBagLayout());
+
+        gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        pFilter.add(new JLabel(messages.getString("result_filter")), gbc);
+
+        gbc = new GridBagConstraints();
+        gbc.gridx = 1;
+        gbc.weightx = 1;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = new Insets(0, 4, 0, 4);
+        pFilter.add(tfFilter, gbc);
+
+        gbc = new GridBagConstraints();
+        gbc.gridx = 2;
+        pFilter.add(lResultCount, gbc);
+
+        JPanel pResults = new JPanel(new BorderLayout());
+        pResults.add(pFilter, BorderLayout.NORTH);
+        pResults.add(spResults, BorderLayout.CENTER);
+
+        showResultCount();
+
+        JSplitPane spCenter = new JSplitPane(JSplitPane.VERTICAL_SPLIT, pResults, spLog);
+        spCenter.setResizeWeight(0.75);
+
+        frame.add(spCenter, BorderLayout.CENTER);
+
+        refreshTimer = new Timer(REFRESH_INTERVAL, e -> refresh());
 
         frame.pack();
         frame.setMinimumSize(frame.getSize());
@@ -656,31 +875,43 @@ public class CheckCopyGUI implements Runnable {
     }
 
     private void status(String s) {
+        if(!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> status(s));
+            return;
+        }
         tfStatus.setText(s);
     }
 
-    private void logC(String s, Color c) {
+    private static AttributeSet logStyle(Color c) {
         StyleContext sc = StyleContext.getDefaultStyleContext();
         AttributeSet color = sc.addAttribute(SimpleAttributeSet.EMPTY, StyleConstants.Foreground, c);
-        color = sc.addAttribute(color, StyleConstants.Alignment, StyleConstants.ALIGN_JUSTIFIED);
+        return sc.addAttribute(color, StyleConstants.Alignment, StyleConstants.ALIGN_JUSTIFIED);
+    }
 
-        if(cbAutoScroll.isSelected()) {
-            tpLog.setCaretPosition(tpLog.getDocument().getLength());
+    // the document may only be changed on the event dispatch thread
+    private void logC(String s, AttributeSet style) {
+        if(!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> logC(s, style));
+            return;
         }
+        Document doc = tpLog.getDocument();
         try {
-            tpLog.getDocument().insertString(tpLog.getDocument().getLength(), s+ "\n", color);
+            doc.insertString(doc.getLength(), s+ "\n", style);
         } catch (BadLocationException e) {
             log.error("Unexpected error:", e);
         }
+        if(cbAutoScroll.isSelected()) {
+            tpLog.setCaretPosition(doc.getLength());
+        }
     }
 
     private void log(String s) {
         log.info(s);
-        logC(s, Color.black);
+        logC(s, LOG_TEXT);
     }
     private void logError(String s) {
         log.error(s);
-        logC(s, Color.red);
+        logC(s, LOG_ERROR);
     }
 
     private void showErrorMessage(String title, String message) {
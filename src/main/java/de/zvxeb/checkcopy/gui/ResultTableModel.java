@@ -0,0 +1,124 @@
+package de.zvxeb.checkcopy.gui;
+
+import de.zvxeb.checkcopy.CompactResultStore;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.ResourceBundle;
+
+// a window onto a CompactResultStore: the traversal threads fill the store, the
+// event dispatch thread publishes the new entries in batches and cells are
+// formatted only when the table paints them
+class ResultTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    static final int COLUMN_KIND = 0;
+    static final int COLUMN_NAME = 1;
+    static final int COLUMN_DIRECTORY = 2;
+    static final int COLUMN_DETAILS = 3;
+
+    private final ResourceBundle messages;
+    private final String [] columns;
+    private final String [] kinds;
+
+    private CompactResultStore store = new CompactResultStore();
+    // entries the table knows about, only changed on the event dispatch thread
+    private int rows;
+
+    // directory paths are rebuilt from the store's trie, keep one string per reported directory
+    private String [] sourceDirectories = new String [64];
+    private String [] destinationDirectories = new String [64];
+
+    ResultTableModel(ResourceBundle messages) {
+        this.messages = messages;
+        this.columns = new String [] {
+            messages.getString("result_column_kind"),
+            messages.getString("result_column_name"),
+            messages.getString("result_column_directory"),
+            messages.getString("result_column_details")
+        };
+        this.kinds = new String [] {
+            messages.getString("result_kind_not_in_destination"),
+            messages.getString("result_kind_not_in_source"),
+            messages.getString("result_kind_conflict")
+        };
+    }
+
+    CompactResultStore store() {
+        return store;
+    }
+
+    // a fresh store for the next check
+    CompactResultStore reset() {
+        store = new CompactResultStore();
+        rows = 0;
+        Arrays.fill(sourceDirectories, null);
+        Arrays.fill(destinationDirectories, null);
+        fireTableDataChanged();
+        return store;
+    }
+
+    // makes the entries stored since the last call visible, returns their number
+    int publish() {
+        int size = store.size();
+        if(size <= rows) {
+            return 0;
+        }
+        int first = rows;
+        rows = size;
+        fireTableRowsInserted(first, size - 1);
+        return size - first;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        switch(column) {
+            case COLUMN_KIND:
+                return kinds[store.kind(row)];
+            case COLUMN_NAME:
+                return store.name(row);
+            case COLUMN_DIRECTORY:
+                return directory(row);
+            case COLUMN_DETAILS:
+                return store.message(row, messages);
+            default:
+                return null;
+        }
+    }
+
+    // unexpected entries are reported where they were found
+    private String directory(int row) {
+        boolean source = store.kind(row) != CompactResultStore.NOT_IN_SOURCE;
+        int pair = store.directory(row);
+        if(pair >= sourceDirectories.length) {
+            int capacity = Math.max(pair + 1, sourceDirectories.length * 2);
+            sourceDirectories = Arrays.copyOf(sourceDirectories, capacity);
+            destinationDirectories = Arrays.copyOf(destinationDirectories, capacity);
+        }
+        String [] cache = source ? sourceDirectories : destinationDirectories;
+        if(cache[pair] == null) {
+            cache[pair] = (source ? store.sourceDirectory(row) : store.destinationDirectory(row)).toString();
+        }
+        return cache[pair];
+    }
+}
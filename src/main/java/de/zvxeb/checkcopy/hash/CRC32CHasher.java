@@ -0,0 +1,161 @@
+package de.zvxeb.checkcopy.hash;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+// uses java.util.zip.CRC32C (intrinsic on Java 9+) and falls back to a table
+// implementation on Java 8
+public class CRC32CHasher implements Hasher {
+    private static Logger log = LoggerFactory.getLogger(CRC32CHasher.class);
+
+    public static final String ALGORITHM = "CRC32C";
+
+    private static final Class<?> jdkCrc32c;
+    private static final MethodHandle updateBuffer;
+
+    static {
+        Class<?> c = null;
+        MethodHandle mh = null;
+        try {
+            c = Class.forName("java.util.zip.CRC32C");
+            mh = MethodHandles.publicLookup().findVirtual(Checksum.class, "update", MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            log.debug("No JDK CRC32C available - using table implementation");
+            c = null;
+            mh = null;
+        }
+        jdkCrc32c = c;
+        updateBuffer = mh;
+    }
+
+    private final Checksum checksum;
+    private byte [] scratch;
+
+    public CRC32CHasher() {
+        this.checksum = newChecksum();
+    }
+
+    private static Checksum newChecksum() {
+        if(jdkCrc32c != null) {
+            try {
+                return (Checksum) jdkCrc32c.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                log.debug("Unable to create JDK CRC32C", e);
+            }
+        }
+        return new TableCRC32C();
+    }
+
+    @Override
+    public String algorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public void reset() {
+        checksum.reset();
+    }
+
+    @Override
+    public void update(byte [] b, int off, int len) {
+        checksum.update(b, off, len);
+    }
+
+    @Override
+    public void update(ByteBuffer b) {
+        if(updateBuffer != null && !(checksum instanceof TableCRC32C)) {
+            try {
+                updateBuffer.invokeExact(checksum, b);
+                return;
+            } catch (Throwable t) {
+                throw new IllegalStateException("CRC32C update failed", t);
+            }
+        }
+        if(b.hasArray()) {
+            checksum.update(b.array(), b.arrayOffset() + b.position(), b.remaining());
+            b.position(b.limit());
+            return;
+        }
+        if(scratch == null) {
+            scratch = new byte [8192];
+        }
+        while(b.hasRemaining()) {
+            int n = Math.min(scratch.length, b.remaining());
+            b.get(scratch, 0, n);
+            checksum.update(scratch, 0, n);
+        }
+    }
+
+    @Override
+    public byte [] digest() {
+        byte [] d = new byte [4];
+        digest(d);
+        return d;
+    }
+
+    @Override
+    public int digestLength() {
+        return 4;
+    }
+
+    @Override
+    public void digest(byte [] out) {
+        int v = (int) checksum.getValue();
+        checksum.reset();
+        out[0] = (byte) (v >>> 24);
+        out[1] = (byte) (v >>> 16);
+        out[2] = (byte) (v >>> 8);
+        out[3] = (byte) v;
+    }
+
+    @Override
+    public Hasher copy() {
+        return new CRC32CHasher();
+    }
+
+    static class TableCRC32C implements Checksum {
+        private static final int [] TABLE = new int [256];
+
+        static {
+            for(int i = 0; i < 256; i++) {
+                int c = i;
+                for(int k = 0; k < 8; k++) {
+                    c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+                }
+                TABLE[i] = c;
+            }
+        }
+
+        private int crc = 0xFFFFFFFF;
+
+        @Override
+        public void update(int b) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+        }
+
+        @Override
+        public void update(byte [] b, int off, int len) {
+            int c = crc;
+            for(int i = off, end = off + len; i < end; i++) {
+                c = (c >>> 8) ^ TABLE[(c ^ b[i]) & 0xFF];
+            }
+            crc = c;
+        }
+
+        @Override
+        public long getValue() {
+            return (~crc) & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0xFFFFFFFF;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package de.zvxeb.checkcopy.hash;
+
+import java.nio.ByteBuffer;
+
+public interface Hasher {
+    String algorithm();
+
+    void reset();
+
+    void update(byte [] b, int off, int len);
+
+    void update(ByteBuffer b);
+
+    byte [] digest();
+
+    // digest length in bytes, 0 if it is not known before the digest is done
+    default int digestLength() {
+        return 0;
+    }
+
+    // like digest(), but into an array of exactly digestLength() bytes
+    default void digest(byte [] out) {
+        byte [] d = digest();
+        System.arraycopy(d, 0, out, 0, out.length);
+    }
+
+    // a fresh instance of the same algorithm for use on another thread
+    Hasher copy();
+}
@@ -0,0 +1,7 @@
+package de.zvxeb.checkcopy.hash;
+
+// additional algorithms can be registered via META-INF/services
+public interface HasherProvider {
+    // null if the algorithm is not supported by this provider
+    Hasher create(String algorithm);
+}
@@ -0,0 +1,33 @@
+package de.zvxeb.checkcopy.hash;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ServiceLoader;
+
+public class Hashers {
+    public static final String [] BUILT_IN = { CRC32CHasher.ALGORITHM, XXHash64Hasher.ALGORITHM };
+
+    private Hashers() {
+    }
+
+    // built-in fast hashes first, then registered providers, then JCA message digests
+    public static Hasher forName(String algorithm) throws NoSuchAlgorithmException {
+        if(CRC32CHasher.ALGORITHM.equalsIgnoreCase(algorithm)) {
+            return new CRC32CHasher();
+        }
+        if(XXHash64Hasher.ALGORITHM.equalsIgnoreCase(algorithm) || "xxHash64".equalsIgnoreCase(algorithm)) {
+            return new XXHash64Hasher();
+        }
+        for(HasherProvider hp : ServiceLoader.load(HasherProvider.class)) {
+            Hasher h = hp.create(algorithm);
+            if(h != null) {
+                return h;
+            }
+        }
+        return new MessageDigestHasher(MessageDigest.getInstance(algorithm));
+    }
+
+    public static Hasher wrap(MessageDigest md) {
+        return md != null ? new MessageDigestHasher(md) : null;
+    }
+}
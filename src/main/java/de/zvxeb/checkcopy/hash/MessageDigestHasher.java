@@ -0,0 +1,66 @@
+package de.zvxeb.checkcopy.hash;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class MessageDigestHasher implements Hasher {
+    private final MessageDigest md;
+
+    public MessageDigestHasher(MessageDigest md) {
+        this.md = md;
+    }
+
+    public MessageDigest messageDigest() {
+        return md;
+    }
+
+    @Override
+    public String algorithm() {
+        return md.getAlgorithm();
+    }
+
+    @Override
+    public void reset() {
+        md.reset();
+    }
+
+    @Override
+    public void update(byte [] b, int off, int len) {
+        md.update(b, off, len);
+    }
+
+    @Override
+    public void update(ByteBuffer b) {
+        md.update(b);
+    }
+
+    @Override
+    public byte [] digest() {
+        return md.digest();
+    }
+
+    @Override
+    public int digestLength() {
+        return md.getDigestLength();
+    }
+
+    @Override
+    public void digest(byte [] out) {
+        try {
+            md.digest(out, 0, out.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException("Unable to complete " + md.getAlgorithm() + " digest", e);
+        }
+    }
+
+    @Override
+    public Hasher copy() {
+        try {
+            return new MessageDigestHasher(MessageDigest.getInstance(md.getAlgorithm(), md.getProvider()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to create new instance of " + md.getAlgorithm(), e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package de.zvxeb.checkcopy.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// streaming xxHash64 with seed 0, digest is the big endian hash value
+public class XXHash64Hasher implements Hasher {
+    public static final String ALGORITHM = "XXH64";
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+
+    private final long seed;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long totalLength;
+
+    // bytes of an incomplete stripe
+    private final ByteBuffer pending = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+
+    public XXHash64Hasher() {
+        this(0L);
+    }
+
+    public XXHash64Hasher(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    @Override
+    public String algorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public void reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        totalLength = 0;
+        pending.clear();
+    }
+
+    @Override
+    public void update(byte [] b, int off, int len) {
+        update(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public void update(ByteBuffer b) {
+        ByteBuffer in = b.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int length = in.remaining();
+        totalLength += length;
+
+        int i = 0;
+        if(pending.position() > 0) {
+            int n = Math.min(STRIPE - pending.position(), length);
+            for(int k = 0; k < n; k++) {
+                pending.put(in.get(k));
+            }
+            i = n;
+            if(pending.hasRemaining()) {
+                b.position(b.limit());
+                return;
+            }
+            stripe(pending, 0);
+            pending.clear();
+        }
+
+        for(; i + STRIPE <= length; i += STRIPE) {
+            stripe(in, i);
+        }
+
+        for(; i < length; i++) {
+            pending.put(in.get(i));
+        }
+        b.position(b.limit());
+    }
+
+    private void stripe(ByteBuffer in, int i) {
+        v1 = round(v1, in.getLong(i));
+        v2 = round(v2, in.getLong(i + 8));
+        v3 = round(v3, in.getLong(i + 16));
+        v4 = round(v4, in.getLong(i + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long merge(long acc, long v) {
+        acc ^= round(0, v);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    public long value() {
+        long h;
+        if(totalLength >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+        h += totalLength;
+
+        int limit = pending.position();
+        int i = 0;
+        for(; i + 8 <= limit; i += 8) {
+            h ^= round(0, pending.getLong(i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if(i + 4 <= limit) {
+            h ^= (pending.getInt(i) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for(; i < limit; i++) {
+            h ^= (pending.get(i) & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    @Override
+    public byte [] digest() {
+        byte [] d = new byte [8];
+        digest(d);
+        return d;
+    }
+
+    @Override
+    public int digestLength() {
+        return 8;
+    }
+
+    @Override
+    public void digest(byte [] out) {
+        long h = value();
+        reset();
+        for(int k = 7; k >= 0; k--) {
+            out[k] = (byte) h;
+            h >>>= 8;
+        }
+    }
+
+    @Override
+    public Hasher copy() {
+        return new XXHash64Hasher(seed);
+    }
+}